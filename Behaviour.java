@@ -0,0 +1,24 @@
+/**
+ * Independent part of the robot's activity (such as a movement, or a tune) run by a BehaviourScheduler
+ * alongside other behaviours. Each step should return straight away rather than waiting, so that every
+ * behaviour gets to run on each cycle.
+ *
+ * @author Jack Deadman
+ * @author Joshua O'Leary
+ */
+
+public interface Behaviour {
+	/**
+	 * Determines whether the behaviour drives the motors, so only the highest priority motor behaviour is run
+	 * @return boolean True if the behaviour uses the motors
+	 */
+	boolean usesMotors();
+
+	/**
+	 * Runs one cycle of the behaviour. A motor behaviour should give its motor command on every step, as a
+	 * higher priority behaviour may have replaced it while this one was suppressed.
+	 * @param now long Current time (from the scheduler's clock, in nanoseconds)
+	 * @return boolean True if the behaviour has more to do, false once it has finished
+	 */
+	boolean step(long now);
+}
@@ -0,0 +1,135 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Runs several behaviours at once by stepping each of them every cycle on a single thread, so motion, sound
+ * and sensing overlap without the behaviours blocking each other. Access to the motors is arbitrated by
+ * priority (subsumption): of the behaviours that use the motors, only the one with the highest priority is
+ * stepped, suppressing the rest until it finishes.
+ *
+ * @author Jack Deadman
+ * @author Joshua O'Leary
+ */
+
+public class BehaviourScheduler {
+	private final ControlLoopScheduler loop;
+	private final Clock clock;
+
+	// Behaviours which have not finished, highest priority first (in the order they were added for equal priorities)
+	private final List<ScheduledBehaviour> behaviours = new ArrayList<ScheduledBehaviour>();
+
+	/**
+	 * Behaviour together with its priority and the future completed when it finishes
+	 */
+	private static class ScheduledBehaviour {
+		private final Behaviour behaviour;
+		private final int priority;
+		private final CompletableFuture<Void> finished = new CompletableFuture<Void>();
+
+		private ScheduledBehaviour(Behaviour behaviour, int priority) {
+			this.behaviour = behaviour;
+			this.priority = priority;
+		}
+	}
+
+	/**
+	 * Constructs a new BehaviourScheduler
+	 * @param period int Time between steps of the behaviours (in milliseconds)
+	 * @param clock Clock Clock used to time the steps
+	 */
+	public BehaviourScheduler(int period, Clock clock) {
+		this.loop = new ControlLoopScheduler(period, clock);
+		this.clock = clock;
+	}
+
+	/**
+	 * Adds a behaviour, to be stepped from the next cycle. May be called by a behaviour while it is being stepped.
+	 * @param behaviour Behaviour Behaviour to run
+	 * @param priority int Priority of the behaviour for access to the motors (higher numbers take precedence)
+	 * @return CompletableFuture&lt;Void&gt; Completed when the behaviour finishes
+	 */
+	public synchronized CompletableFuture<Void> add(Behaviour behaviour, int priority) {
+		ScheduledBehaviour scheduled = new ScheduledBehaviour(behaviour, priority);
+		int index = 0;
+		while (index < behaviours.size() && behaviours.get(index).priority >= priority) {
+			index++;
+		}
+		behaviours.add(index, scheduled);
+		return scheduled.finished;
+	}
+
+	/**
+	 * Determines whether any behaviours have not finished
+	 * @return boolean True if there are behaviours left to run
+	 */
+	public synchronized boolean isRunning() {
+		return !behaviours.isEmpty();
+	}
+
+	/**
+	 * Steps the behaviours every cycle until all of them have finished
+	 */
+	public void run() throws InterruptedException {
+		loop.start();
+		while (isRunning()) {
+			step(clock.nanoTime());
+			if (isRunning()) {
+				loop.waitForNextCycle();
+			}
+		}
+	}
+
+	/**
+	 * Runs a single cycle: steps every behaviour which does not use the motors, and the highest priority
+	 * one which does
+	 * @param now long Current time (from the scheduler's clock, in nanoseconds)
+	 */
+	public void step(long now) {
+		List<ScheduledBehaviour> current;
+		synchronized (this) {
+			current = new ArrayList<ScheduledBehaviour>(behaviours);
+		}
+
+		boolean motorsTaken = false;
+		for (ScheduledBehaviour scheduled : current) {
+			if (scheduled.behaviour.usesMotors()) {
+				if (motorsTaken) {
+					continue;
+				}
+				motorsTaken = true;
+			}
+
+			boolean running;
+			try {
+				running = scheduled.behaviour.step(now);
+			}
+			catch (RuntimeException e) {
+				// The other behaviours cannot be relied on to finish safely either, so all of them are ended
+				scheduled.finished.completeExceptionally(e);
+				cancelAll();
+				throw e;
+			}
+			if (!running) {
+				synchronized (this) {
+					behaviours.remove(scheduled);
+				}
+				scheduled.finished.complete(null);
+			}
+		}
+	}
+
+	/**
+	 * Removes every behaviour without finishing it, cancelling their futures
+	 */
+	public void cancelAll() {
+		List<ScheduledBehaviour> cancelled;
+		synchronized (this) {
+			cancelled = new ArrayList<ScheduledBehaviour>(behaviours);
+			behaviours.clear();
+		}
+		for (ScheduledBehaviour scheduled : cancelled) {
+			scheduled.finished.cancel(false);
+		}
+	}
+}
@@ -0,0 +1,111 @@
+/**
+ * Wrapper for a robot's motor which remembers the last speed and direction sent to it, so that commands
+ * which would not change the motor's state are not sent over the connection
+ *
+ * @author Jack Deadman
+ * @author Joshua O'Leary
+ */
+
+public class CachedMotor {
+	private final RobotBackend backend;
+	private final int motor;
+
+	// Last state sent to the motor (unknown until the first command is sent)
+	private int speed = -1;
+	private MotorDirection direction = null;
+
+	private long commandsIssued;
+	private long commandsSuppressed;
+
+	/**
+	 * Constructs a new CachedMotor
+	 * @param backend RobotBackend Backend to send commands to
+	 * @param motor int Index of motor
+	 */
+	public CachedMotor(RobotBackend backend, int motor) {
+		this.backend = backend;
+		this.motor = motor;
+	}
+
+	/**
+	 * Sets the motor's speed, only sending the command if the speed has changed
+	 * @param speed int Speed (degrees per second)
+	 */
+	public synchronized void setSpeed(int speed) {
+		if (this.speed == speed) {
+			commandsSuppressed++;
+			return;
+		}
+		backend.setMotorSpeed(motor, speed);
+		this.speed = speed;
+		commandsIssued++;
+	}
+
+	/**
+	 * Sets the motor's direction, only sending the command if the direction has changed
+	 * @param direction MotorDirection Direction to rotate in (or STOPPED)
+	 * @param verify boolean True to wait for the robot to acknowledge the command
+	 */
+	public synchronized void setDirection(MotorDirection direction, boolean verify) {
+		if (this.direction == direction) {
+			commandsSuppressed++;
+			return;
+		}
+		backend.setMotorDirection(motor, direction, verify);
+		this.direction = direction;
+		commandsIssued++;
+	}
+
+	/**
+	 * Rotates the motor forward
+	 */
+	public void forward() {
+		setDirection(MotorDirection.FORWARD, false);
+	}
+
+	/**
+	 * Rotates the motor backward
+	 */
+	public void backward() {
+		setDirection(MotorDirection.BACKWARD, false);
+	}
+
+	/**
+	 * Stops the motor
+	 */
+	public void stop() {
+		setDirection(MotorDirection.STOPPED, false);
+	}
+
+	/**
+	 * Returns the last speed sent to the motor
+	 * @return int Speed (degrees per second), or -1 if unknown
+	 */
+	public synchronized int getSpeed() {
+		return speed;
+	}
+
+	/**
+	 * Returns the last direction sent to the motor
+	 * @return MotorDirection Direction, or null if unknown
+	 */
+	public synchronized MotorDirection getDirection() {
+		return direction;
+	}
+
+	/**
+	 * Returns the number of commands actually sent to the motor
+	 * @return long Number of commands sent
+	 */
+	public synchronized long getCommandsIssued() {
+		return commandsIssued;
+	}
+
+	/**
+	 * Returns the number of commands not sent because they would not have changed the motor's state
+	 * @return long Number of commands suppressed
+	 */
+	public synchronized long getCommandsSuppressed() {
+		return commandsSuppressed;
+	}
+}
@@ -0,0 +1,31 @@
+/**
+ * Source of time used for delays and timestamps, allowing a simulated robot to run faster than real time
+ *
+ * @author Jack Deadman
+ * @author Joshua O'Leary
+ */
+
+public interface Clock {
+	// Clock following real time
+	Clock SYSTEM = new Clock() {
+		public long nanoTime() {
+			return System.nanoTime();
+		}
+
+		public void sleep(long millis) throws InterruptedException {
+			Thread.sleep(millis);
+		}
+	};
+
+	/**
+	 * Returns the current time, only meaningful relative to other times from the same clock
+	 * @return long Time in nanoseconds
+	 */
+	long nanoTime();
+
+	/**
+	 * Blocks the program for a given time
+	 * @param millis long Duration of delay (in milliseconds)
+	 */
+	void sleep(long millis) throws InterruptedException;
+}
@@ -0,0 +1,329 @@
+/**
+ * Backend wrapper which keeps the connection to the robot alive: a background thread checks the link
+ * whenever it has been idle, and if any call fails the connection is reopened and the robot put back in
+ * the state it was last commanded to be in (motor speeds and directions, and whether commands are
+ * verified) before the call is retried, so a dropped link does not end the run.
+ *
+ * @author Jack Deadman
+ * @author Joshua O'Leary
+ */
+
+public class ConnectionManager implements RobotBackend, Runnable {
+	// Time the link may be idle before it is checked (in milliseconds)
+	private static final int HEALTH_CHECK_INTERVAL = 1000;
+
+	// Attempts made to reopen the connection before giving up, and the time between them (increasing with
+	// each attempt, in milliseconds)
+	private static final int RECONNECT_ATTEMPTS = 5;
+	private static final int RECONNECT_DELAY = 200;
+
+	private final RobotBackend backend;
+
+	// Last state commanded, restored after reconnecting (guarded by this)
+	private final int[] motorSpeed = new int[2];
+	private final MotorDirection[] motorDirection = new MotorDirection[2];
+	private final boolean[] motorVerify = new boolean[2];
+	private boolean sensorsPrepared = false;
+
+	// Incremented on each reconnection, so threads which failed on the same connection only reconnect once
+	private volatile int generation;
+	private volatile long reconnects;
+
+	// Whether a thread is reopening the connection (guarded by this, which is only held while restoring the
+	// state, not while waiting between attempts)
+	private boolean reconnecting;
+
+	// Time of the last successful call (by the backend's clock)
+	private volatile long lastContact;
+
+	private volatile boolean running;
+	private Thread thread;
+
+	/**
+	 * Constructs a new ConnectionManager
+	 * @param backend RobotBackend Backend whose connection is managed
+	 */
+	public ConnectionManager(RobotBackend backend) {
+		this.backend = backend;
+	}
+
+	/**
+	 * Returns the number of times the connection has been reopened after failing
+	 * @return long Number of reconnections
+	 */
+	public long getReconnects() {
+		return reconnects;
+	}
+
+	public void open() {
+		backend.open();
+		lastContact = backend.nanoTime();
+
+		synchronized (this) {
+			if (backend.isRealTime() && !running) {
+				running = true;
+				thread = new Thread(this, "ConnectionManager");
+				thread.setDaemon(true);
+				thread.start();
+			}
+		}
+	}
+
+	public void close() {
+		Thread checker;
+		synchronized (this) {
+			running = false;
+			checker = thread;
+			thread = null;
+		}
+		if (checker != null) {
+			checker.interrupt();
+			try {
+				checker.join();
+			}
+			catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+		backend.close();
+	}
+
+	public boolean isRealTime() {
+		return backend.isRealTime();
+	}
+
+	public void prepareSensors() {
+		synchronized (this) {
+			sensorsPrepared = true;
+		}
+		backend.prepareSensors();
+	}
+
+	public int getLightValueLeft() {
+		int current = generation;
+		try {
+			return contacted(backend.getLightValueLeft());
+		}
+		catch (RuntimeException e) {
+			reconnect(current, e, true);
+			return contacted(backend.getLightValueLeft());
+		}
+	}
+
+	public int getLightValueRight() {
+		int current = generation;
+		try {
+			return contacted(backend.getLightValueRight());
+		}
+		catch (RuntimeException e) {
+			reconnect(current, e, true);
+			return contacted(backend.getLightValueRight());
+		}
+	}
+
+	public int getDistance() {
+		int current = generation;
+		try {
+			return contacted(backend.getDistance());
+		}
+		catch (RuntimeException e) {
+			reconnect(current, e, true);
+			return contacted(backend.getDistance());
+		}
+	}
+
+	public int getTachoCount(int motor) {
+		int current = generation;
+		try {
+			return contacted(backend.getTachoCount(motor));
+		}
+		catch (RuntimeException e) {
+			reconnect(current, e, true);
+			return contacted(backend.getTachoCount(motor));
+		}
+	}
+
+	public void setMotorSpeed(int motor, int speed) {
+		synchronized (this) {
+			motorSpeed[motor] = speed;
+		}
+		int current = generation;
+		try {
+			backend.setMotorSpeed(motor, speed);
+			contacted(0);
+		}
+		catch (RuntimeException e) {
+			// Reconnecting sends the new speed along with the rest of the restored state
+			reconnect(current, e, false);
+		}
+	}
+
+	public void setMotorDirection(int motor, MotorDirection direction, boolean verify) {
+		synchronized (this) {
+			motorDirection[motor] = direction;
+			motorVerify[motor] = verify;
+		}
+		int current = generation;
+		try {
+			backend.setMotorDirection(motor, direction, verify);
+			contacted(0);
+		}
+		catch (RuntimeException e) {
+			reconnect(current, e, false);
+		}
+	}
+
+	public void playTone(int hz, int duration) {
+		int current = generation;
+		try {
+			backend.playTone(hz, duration);
+			contacted(0);
+		}
+		catch (RuntimeException e) {
+			// A missed note is not worth repeating late
+			reconnect(current, e, false);
+		}
+	}
+
+	public long nanoTime() {
+		return backend.nanoTime();
+	}
+
+	public void sleep(long millis) throws InterruptedException {
+		backend.sleep(millis);
+	}
+
+	@Override
+	public void run() {
+		while (running) {
+			try {
+				backend.sleep(HEALTH_CHECK_INTERVAL);
+				if (backend.nanoTime() - lastContact >= HEALTH_CHECK_INTERVAL * 1000000L) {
+					// Any cheap read will do: it fails (and reconnects) if the link has dropped
+					getTachoCount(MOTOR_LEFT);
+				}
+			}
+			catch (InterruptedException e) {
+				// Interrupted by close(), loop condition ends checking
+			}
+			catch (IllegalStateException e) {
+				// Reconnecting failed, so it is tried again on the next check or call
+				System.err.println(e.getMessage());
+			}
+		}
+	}
+
+	/**
+	 * Records that a call succeeded
+	 * @param value int Value returned by the call
+	 * @return int The same value
+	 */
+	private int contacted(int value) {
+		lastContact = backend.nanoTime();
+		return value;
+	}
+
+	/**
+	 * Reopens the connection after a call failed, unless another thread has already done so since the call
+	 * was made, and restores the commanded state
+	 * @param failedGeneration int Generation of the connection the call was made on
+	 * @param cause RuntimeException Failure of the call
+	 * @param await boolean True to wait if another thread is already reopening the connection (for reads,
+	 * which need the connection back), false to return straight away (for commands, which are recorded in
+	 * the state that thread restores)
+	 */
+	private void reconnect(int failedGeneration, RuntimeException cause, boolean await) {
+		synchronized (this) {
+			if (!awaitReconnection(failedGeneration, await)) {
+				return;
+			}
+			reconnecting = true;
+		}
+
+		try {
+			RuntimeException failure = cause;
+			for (int attempt = 1; attempt <= RECONNECT_ATTEMPTS; attempt++) {
+				System.err.println("Connection to robot failed (" + failure + "), reconnecting (attempt " + attempt
+						+ ")");
+				try {
+					backend.close();
+				}
+				catch (RuntimeException e) {
+					// The connection is being replaced anyway
+				}
+
+				try {
+					backend.sleep(attempt * RECONNECT_DELAY);
+					backend.open();
+					restoreState();
+				}
+				catch (RuntimeException e) {
+					failure = e;
+					continue;
+				}
+				catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					break;
+				}
+
+				reconnects++;
+				lastContact = backend.nanoTime();
+				return;
+			}
+			throw new IllegalStateException("Could not reconnect to robot", failure);
+		}
+		finally {
+			synchronized (this) {
+				reconnecting = false;
+				notifyAll();
+			}
+		}
+	}
+
+	/**
+	 * Waits for a reconnection another thread is making, if asked to (uninterruptibly, as the backend's calls
+	 * cannot throw InterruptedException: the interrupt is kept for the caller's next wait)
+	 * @param failedGeneration int Generation of the connection the failed call was made on
+	 * @param await boolean True to wait for the other thread, false to return straight away
+	 * @return boolean True if the calling thread must reconnect itself
+	 */
+	private synchronized boolean awaitReconnection(int failedGeneration, boolean await) {
+		boolean interrupted = false;
+		try {
+			while (reconnecting && failedGeneration == generation) {
+				if (!await) {
+					return false;
+				}
+				try {
+					wait();
+				}
+				catch (InterruptedException e) {
+					interrupted = true;
+				}
+			}
+			return failedGeneration == generation;
+		}
+		finally {
+			if (interrupted) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	/**
+	 * Puts the robot back in the state last commanded on a newly opened connection, then makes the connection
+	 * current. Held under the lock, so no command can change the state part way through.
+	 */
+	private synchronized void restoreState() {
+		for (int motor = 0; motor < motorDirection.length; motor++) {
+			if (motorDirection[motor] != null) {
+				backend.setMotorSpeed(motor, motorSpeed[motor]);
+				backend.setMotorDirection(motor, motorDirection[motor], motorVerify[motor]);
+			}
+		}
+		if (sensorsPrepared) {
+			backend.prepareSensors();
+		}
+		generation++;
+	}
+}
@@ -0,0 +1,143 @@
+/**
+ * Runs a control loop at a fixed rate by waiting until absolute deadlines, rather than sleeping for a
+ * fixed time after each cycle (which makes the period drift with however long the cycle took). Keeps
+ * statistics of period jitter and overruns.
+ *
+ * @author Jack Deadman
+ * @author Joshua O'Leary
+ */
+
+public class ControlLoopScheduler {
+	private final long period;
+	private final Clock clock;
+
+	// Deadline of the current cycle, and when the previous cycle started (in nanoseconds)
+	private long deadline;
+	private long lastCycleStart;
+
+	private long cycles;
+	private long overruns;
+	private long skippedCycles;
+
+	// Difference between when cycles actually start and when they should have started (in nanoseconds)
+	private long totalJitter;
+	private long maxJitter;
+
+	// Time between the starts of consecutive cycles (in nanoseconds)
+	private long totalPeriod;
+	private long maxPeriod;
+
+	/**
+	 * Constructs a new ControlLoopScheduler
+	 * @param period int Target time between the starts of cycles (in milliseconds)
+	 * @param clock Clock Clock used to time the loop
+	 */
+	public ControlLoopScheduler(int period, Clock clock) {
+		this.period = period * 1000000L;
+		this.clock = clock;
+	}
+
+	/**
+	 * Marks the start of a loop: the first deadline is one period from now
+	 */
+	public void start() {
+		lastCycleStart = clock.nanoTime();
+		deadline = lastCycleStart + period;
+	}
+
+	/**
+	 * Blocks until the next cycle is due. If the cycle that has just run took longer than a period, the
+	 * overrun is recorded and any deadlines already missed are skipped, so the loop carries on straight away
+	 * without trying to catch up.
+	 */
+	public void waitForNextCycle() throws InterruptedException {
+		long now = clock.nanoTime();
+
+		if (now > deadline) {
+			overruns++;
+			long missed = (now - deadline) / period;
+			skippedCycles += missed;
+			deadline += missed * period;
+		}
+		else {
+			long remaining = deadline - now;
+			// Rounded to the nearest millisecond, so on average cycles start on their deadline
+			clock.sleep((remaining + 500000L) / 1000000L);
+		}
+
+		long cycleStart = clock.nanoTime();
+		long jitter = Math.abs(cycleStart - deadline);
+		totalJitter += jitter;
+		maxJitter = Math.max(maxJitter, jitter);
+
+		long actualPeriod = cycleStart - lastCycleStart;
+		totalPeriod += actualPeriod;
+		maxPeriod = Math.max(maxPeriod, actualPeriod);
+
+		cycles++;
+		lastCycleStart = cycleStart;
+		deadline += period;
+	}
+
+	/**
+	 * Returns the number of cycles run
+	 * @return long Number of cycles
+	 */
+	public long getCycleCount() {
+		return cycles;
+	}
+
+	/**
+	 * Returns the number of cycles which took longer than the period
+	 * @return long Number of overruns
+	 */
+	public long getOverrunCount() {
+		return overruns;
+	}
+
+	/**
+	 * Returns the number of deadlines skipped because of overruns
+	 * @return long Number of skipped cycles
+	 */
+	public long getSkippedCycles() {
+		return skippedCycles;
+	}
+
+	/**
+	 * Returns the average difference between when cycles started and when they were due
+	 * @return double Mean jitter (in milliseconds)
+	 */
+	public double getMeanJitter() {
+		return cycles == 0 ? 0 : totalJitter / 1e6 / cycles;
+	}
+
+	/**
+	 * Returns the largest difference between when a cycle started and when it was due
+	 * @return double Maximum jitter (in milliseconds)
+	 */
+	public double getMaxJitter() {
+		return maxJitter / 1e6;
+	}
+
+	/**
+	 * Returns the average time between the starts of consecutive cycles
+	 * @return double Mean period (in milliseconds)
+	 */
+	public double getMeanPeriod() {
+		return cycles == 0 ? 0 : totalPeriod / 1e6 / cycles;
+	}
+
+	/**
+	 * Returns the longest time between the starts of consecutive cycles
+	 * @return double Maximum period (in milliseconds)
+	 */
+	public double getMaxPeriod() {
+		return maxPeriod / 1e6;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("%d cycles, period %.1f ms (max %.1f), jitter %.2f ms (max %.2f), %d overruns, %d skipped",
+				cycles, getMeanPeriod(), getMaxPeriod(), getMeanJitter(), getMaxJitter(), overruns, skippedCycles);
+	}
+}
@@ -0,0 +1,208 @@
+/**
+ * Stops the robot if its control loop stalls (for example on a sensor read held up by the connection), so
+ * the motors never keep carrying out an old command for longer than a fixed latency budget. While armed,
+ * whichever loop is driving the robot calls heartbeat() every cycle it acts on new sensor readings (a loop
+ * still running on the last readings the sampler published has stalled as much as one blocked on a read),
+ * and a background thread holds the robot stopped as soon as a heartbeat is later than the budget, until
+ * the next heartbeat. Each stall is recorded in the robot's metrics as "watchdog.stall", and after a stall
+ * the watchdog can ask for a slower, degraded mode until the loop has been keeping to its budget for a while.
+ *
+ * Background threads are only used with real-time backends: in the simulator, late heartbeats are
+ * recorded when they arrive but the robot is not stopped.
+ *
+ * @author Jack Deadman
+ * @author Joshua O'Leary
+ */
+
+public class ControlLoopWatchdog implements Runnable {
+	// Time after a stall during which the degraded mode is kept (in nanoseconds)
+	private static final long RECOVERY_TIME = 2000000000L;
+
+	private final RobotControl control;
+	private final Clock clock;
+	private volatile long budget;
+	private final LatencyHistogram stalls;
+
+	// Whether a degraded mode is asked for after a stall
+	private volatile boolean degradedMode = false;
+
+	// Time of the last heartbeat, and whether the robot has been stopped since it (guarded by this)
+	private long lastBeat;
+	private boolean stopped;
+
+	// Sequence number of the readings behind the last heartbeat (guarded by this)
+	private long lastSequence = -1;
+	private long degradedUntil = Long.MIN_VALUE;
+
+	private volatile boolean armed;
+	private volatile long stopsIssued;
+	private Thread thread;
+
+	/**
+	 * Constructs a new ControlLoopWatchdog
+	 * @param control RobotControl Robot to stop when the control loop stalls
+	 * @param budget int Longest time allowed between heartbeats (in milliseconds)
+	 */
+	public ControlLoopWatchdog(RobotControl control, int budget) {
+		this.control = control;
+		this.clock = control.getClock();
+		this.budget = budget * 1000000L;
+		this.stalls = control.getMetrics().histogram("watchdog.stall");
+		control.addWatchdog(this);
+	}
+
+	/**
+	 * Returns the longest time allowed between heartbeats
+	 * @return int Budget (in milliseconds)
+	 */
+	public int getBudget() {
+		return (int)(budget / 1000000L);
+	}
+
+	/**
+	 * Sets the longest time allowed between heartbeats, taking effect straight away even if armed
+	 * @param budget int Budget (in milliseconds)
+	 */
+	public void setBudget(int budget) {
+		this.budget = budget * 1000000L;
+	}
+
+	/**
+	 * Sets whether the watchdog asks for a degraded mode after a stall (see isDegraded())
+	 * @param enabled boolean True to ask for a degraded mode
+	 */
+	public void setDegradedMode(boolean enabled) {
+		degradedMode = enabled;
+	}
+
+	/**
+	 * Starts watching the control loop, which must call heartbeat() at least once per budget from now on
+	 */
+	public synchronized void arm() {
+		lastBeat = clock.nanoTime();
+		stopped = false;
+		if (armed) {
+			return;
+		}
+		armed = true;
+		if (control.getBackend().isRealTime()) {
+			thread = new Thread(this, "ControlLoopWatchdog");
+			thread.setDaemon(true);
+			thread.start();
+		}
+	}
+
+	/**
+	 * Stops watching the control loop (for example before a deliberate pause), letting the robot move again
+	 * if it was stopped by a stall
+	 */
+	public void disarm() throws InterruptedException {
+		Thread checker;
+		synchronized (this) {
+			if (!armed) {
+				return;
+			}
+			armed = false;
+			checker = thread;
+			thread = null;
+			// A stall still going on is recorded up to now
+			if (stopped) {
+				stalls.record(clock.nanoTime() - lastBeat);
+				stopped = false;
+				control.release();
+			}
+		}
+		if (checker != null) {
+			checker.interrupt();
+			checker.join();
+		}
+	}
+
+	/**
+	 * Records that the control loop is running, ending any stall (and so sending the robot's latest commands
+	 * if it was stopped)
+	 */
+	public synchronized void heartbeat() {
+		if (!armed) {
+			return;
+		}
+		long now = clock.nanoTime();
+		long gap = now - lastBeat;
+		if (gap > budget) {
+			stalls.record(gap);
+			degradedUntil = now + RECOVERY_TIME;
+		}
+		lastBeat = now;
+		if (stopped) {
+			stopped = false;
+			control.release();
+		}
+	}
+
+	/**
+	 * Records that the control loop is running if it is acting on new sensor readings: a loop given the same
+	 * readings again (such as the sampler's latest while a read is held up) is not, so the stall carries on
+	 * @param snapshot SensorSnapshot Readings the control loop is acting on
+	 */
+	public synchronized void heartbeat(SensorSnapshot snapshot) {
+		if (snapshot.getSequence() == lastSequence) {
+			return;
+		}
+		lastSequence = snapshot.getSequence();
+		heartbeat();
+	}
+
+	/**
+	 * Determines whether the control loop should run in a degraded (slower) mode, as it has recently stalled
+	 * @return boolean True if degraded mode is enabled and the loop stalled within the recovery time
+	 */
+	public synchronized boolean isDegraded() {
+		return degradedMode && (stopped || clock.nanoTime() < degradedUntil);
+	}
+
+	/**
+	 * Returns the number of stalls recorded since the robot's metrics were last reset
+	 * @return long Number of stalls
+	 */
+	public long getStallCount() {
+		return stalls.getCount();
+	}
+
+	/**
+	 * Returns the number of times the watchdog has stopped the robot
+	 * @return long Number of stops
+	 */
+	public long getStopsIssued() {
+		return stopsIssued;
+	}
+
+	@Override
+	public void run() {
+		while (armed) {
+			try {
+				// Checked several times per budget, so a stall is caught soon after the budget runs out
+				Thread.sleep(Math.max(1, budget / 5000000L));
+			}
+			catch (InterruptedException e) {
+				// Interrupted by disarm(), loop condition ends watching
+				continue;
+			}
+
+			synchronized (this) {
+				// The robot is held under the lock, so a heartbeat arriving meanwhile always releases it after
+				if (armed && !stopped && clock.nanoTime() - lastBeat > budget) {
+					System.err.println("Control loop stalled for over " + getBudget() + " ms, stopping robot");
+					stopped = true;
+					stopsIssued++;
+					control.hold();
+				}
+			}
+		}
+	}
+
+	@Override
+	public String toString() {
+		return stalls.getCount() + " stalls (max " + stalls.getMax() / 1000000 + " ms), " + stopsIssued
+				+ " stops issued";
+	}
+}
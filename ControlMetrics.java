@@ -0,0 +1,71 @@
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Collection of latency histograms, one per operation, which can be queried while running and printed
+ * as a summary
+ *
+ * @author Jack Deadman
+ * @author Joshua O'Leary
+ */
+
+public class ControlMetrics {
+	private final Clock clock;
+	private final List<LatencyHistogram> histograms = new ArrayList<LatencyHistogram>();
+
+	/**
+	 * Constructs a new ControlMetrics
+	 * @param clock Clock Clock operations are timed with
+	 */
+	public ControlMetrics(Clock clock) {
+		this.clock = clock;
+	}
+
+	/**
+	 * Returns the clock operations are timed with, giving the start time to pass to LatencyHistogram.recordSince()
+	 * @return Clock Metrics clock
+	 */
+	public Clock getClock() {
+		return clock;
+	}
+
+	/**
+	 * Returns the histogram for an operation, creating it if needed. Histograms should be looked up once
+	 * and kept, rather than looked up on every operation.
+	 * @param name String Name of operation
+	 * @return LatencyHistogram Histogram for the operation
+	 */
+	public synchronized LatencyHistogram histogram(String name) {
+		for (LatencyHistogram histogram : histograms) {
+			if (histogram.getName().equals(name)) {
+				return histogram;
+			}
+		}
+		LatencyHistogram histogram = new LatencyHistogram(name, clock);
+		histograms.add(histogram);
+		return histogram;
+	}
+
+	/**
+	 * Clears all histograms
+	 */
+	public synchronized void reset() {
+		for (LatencyHistogram histogram : histograms) {
+			histogram.reset();
+		}
+	}
+
+	/**
+	 * Describes the latencies of every operation that has been used
+	 * @return String One line per operation
+	 */
+	public synchronized String summary() {
+		StringBuilder summary = new StringBuilder();
+		for (LatencyHistogram histogram : histograms) {
+			if (histogram.getCount() > 0) {
+				summary.append(histogram).append(System.lineSeparator());
+			}
+		}
+		return summary.toString();
+	}
+}
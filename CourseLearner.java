@@ -0,0 +1,120 @@
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Learns a CourseMap from the wheels' tachometer counts while the robot follows the line: travel is split
+ * into short windows, each classed as straight or corner by how much the wheels' travel differs over it
+ * (line following swerves from side to side, which cancels out over a window), and consecutive windows of
+ * the same kind are merged into segments.
+ *
+ * @author Jack Deadman
+ * @author Joshua O'Leary
+ */
+
+public class CourseLearner {
+	// Distance travelled in each window (in wheel degrees, about 10cm on our wheels)
+	private static final int WINDOW = 200;
+
+	// Difference between the wheels, as a fraction of the distance travelled, above which a window is a corner
+	private static final double CORNER_THRESHOLD = 0.2;
+
+	private final Direction direction;
+	private final List<CourseSegment> segments = new ArrayList<CourseSegment>();
+
+	// Tachometer counts where navigation started
+	private int originLeft;
+	private int originRight;
+	private boolean started;
+
+	// Distance, turn and time where the current window and the current segment started
+	private int windowStart;
+	private int windowTurn;
+	private long windowTime;
+	private int segmentStart;
+	private int segmentTurn;
+	private long segmentTime;
+	private boolean segmentCorner;
+
+	/**
+	 * Constructs a new CourseLearner
+	 * @param direction Direction Direction of the robot's first turn on the run being learned
+	 */
+	public CourseLearner(Direction direction) {
+		this.direction = direction;
+	}
+
+	/**
+	 * Adds a set of readings taken while navigating (the first set added is taken as the start line)
+	 * @param snapshot SensorSnapshot Readings, including tachometer counts
+	 */
+	public void update(SensorSnapshot snapshot) {
+		if (!started) {
+			originLeft = snapshot.getTachoCountLeft();
+			originRight = snapshot.getTachoCountRight();
+			windowTime = snapshot.getTimestamp();
+			segmentTime = windowTime;
+			started = true;
+			return;
+		}
+
+		int distance = getDistance(snapshot);
+		int turn = getTurn(snapshot);
+		int travelled = distance - windowStart;
+		if (travelled < WINDOW) {
+			return;
+		}
+
+		boolean corner = Math.abs(turn - windowTurn) > CORNER_THRESHOLD * travelled;
+		if (corner != segmentCorner && windowStart > segmentStart) {
+			endSegment(windowStart, windowTurn, windowTime);
+		}
+		segmentCorner = corner;
+		windowStart = distance;
+		windowTurn = turn;
+		windowTime = snapshot.getTimestamp();
+	}
+
+	/**
+	 * Returns the distance travelled since navigation started
+	 * @param snapshot SensorSnapshot Readings, including tachometer counts
+	 * @return int Mean of the wheels' travel (in wheel degrees)
+	 */
+	public int getDistance(SensorSnapshot snapshot) {
+		return (snapshot.getTachoCountLeft() - originLeft + snapshot.getTachoCountRight() - originRight) / 2;
+	}
+
+	/**
+	 * Finishes learning at the spot
+	 * @param snapshot SensorSnapshot Readings in which the spot was found
+	 * @return CourseMap Route learned
+	 */
+	public CourseMap reachedSpot(SensorSnapshot snapshot) {
+		int distance = getDistance(snapshot);
+		if (distance > segmentStart) {
+			endSegment(distance, getTurn(snapshot), snapshot.getTimestamp());
+		}
+		return new CourseMap(direction, segments, distance);
+	}
+
+	/**
+	 * Abandons learning when an obstacle turns the robot around: the spot is the other way, so the next run
+	 * sets off in the other direction and learns the route from there
+	 * @return CourseMap Map with the other direction and no route
+	 */
+	public CourseMap turnedAround() {
+		Direction other = direction == Direction.LEFT ? Direction.RIGHT : Direction.LEFT;
+		return new CourseMap(other, new ArrayList<CourseSegment>(), -1);
+	}
+
+	private int getTurn(SensorSnapshot snapshot) {
+		return snapshot.getTachoCountRight() - originRight - (snapshot.getTachoCountLeft() - originLeft);
+	}
+
+	private void endSegment(int end, int turn, long timestamp) {
+		segments.add(new CourseSegment(segmentCorner, segmentStart, end, turn - segmentTurn,
+				(int)((timestamp - segmentTime) / 1000000)));
+		segmentStart = end;
+		segmentTurn = turn;
+		segmentTime = timestamp;
+	}
+}
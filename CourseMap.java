@@ -0,0 +1,169 @@
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Course learned on a previous run: the direction to set off in and, once a run in that direction has reached
+ * the spot, the straights and corners on the way and how far along the spot is. Saved as a text file, one
+ * line per value:
+ *
+ *     direction RIGHT
+ *     spot 2610
+ *     segment STRAIGHT 0 1200 -15 3100
+ *
+ * (segments as start, end, turn and duration, see CourseSegment).
+ *
+ * @author Jack Deadman
+ * @author Joshua O'Leary
+ */
+
+public class CourseMap {
+	private final Direction direction;
+	private final List<CourseSegment> segments;
+	private final int spotDistance;
+
+	/**
+	 * Constructs a new CourseMap
+	 * @param direction Direction Direction of the robot's first turn
+	 * @param segments List Segments from the start line to the spot, in order (empty if not learned yet)
+	 * @param spotDistance int Distance travelled from the start line to the spot (in wheel degrees), or -1 if
+	 * the route in this direction has not been learned yet
+	 */
+	public CourseMap(Direction direction, List<CourseSegment> segments, int spotDistance) {
+		this.direction = direction;
+		this.segments = Collections.unmodifiableList(new ArrayList<CourseSegment>(segments));
+		this.spotDistance = spotDistance;
+	}
+
+	/**
+	 * Returns the direction of the robot's first turn
+	 * @return Direction Start direction
+	 */
+	public Direction getDirection() {
+		return direction;
+	}
+
+	/**
+	 * Returns the segments from the start line to the spot
+	 * @return List Segments, in order
+	 */
+	public List<CourseSegment> getSegments() {
+		return segments;
+	}
+
+	/**
+	 * Returns the distance travelled from the start line to the spot
+	 * @return int Distance (in wheel degrees), or -1 if not learned
+	 */
+	public int getSpotDistance() {
+		return spotDistance;
+	}
+
+	/**
+	 * Determines whether the route to the spot in the map's direction has been learned
+	 * @return boolean True if the map can be driven from
+	 */
+	public boolean isLearned() {
+		return spotDistance >= 0;
+	}
+
+	/**
+	 * Determines whether the course is straight for a distance ahead, so the robot can drive faster than
+	 * it could safely take a corner or stop at the spot
+	 * @param distance int Distance travelled from the start line (in wheel degrees)
+	 * @param lookahead int Distance ahead which must be straight (in wheel degrees)
+	 * @return boolean True if no corner or spot is within the distance ahead
+	 */
+	public boolean isClearAhead(int distance, int lookahead) {
+		int horizon = distance + lookahead;
+		if (!isLearned() || horizon >= spotDistance) {
+			return false;
+		}
+		for (CourseSegment segment : segments) {
+			if (segment.isCorner() && segment.getStart() <= horizon && segment.getEnd() >= distance) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Reads a map saved by save()
+	 * @param input File File to read
+	 * @return CourseMap Map read
+	 */
+	public static CourseMap load(File input) throws IOException {
+		Direction direction = null;
+		List<CourseSegment> segments = new ArrayList<CourseSegment>();
+		int spotDistance = -1;
+
+		BufferedReader reader = new BufferedReader(new FileReader(input));
+		try {
+			String line;
+			int lineNumber = 0;
+			while ((line = reader.readLine()) != null) {
+				lineNumber++;
+				String[] fields = line.trim().split("\\s+");
+				try {
+					if (fields[0].equals("direction") && fields.length == 2) {
+						direction = Direction.valueOf(fields[1]);
+					}
+					else if (fields[0].equals("spot") && fields.length == 2) {
+						spotDistance = Integer.parseInt(fields[1]);
+					}
+					else if (fields[0].equals("segment") && fields.length == 6) {
+						segments.add(new CourseSegment(fields[1].equals("CORNER"), Integer.parseInt(fields[2]),
+								Integer.parseInt(fields[3]), Integer.parseInt(fields[4]),
+								Integer.parseInt(fields[5])));
+					}
+					else if (!fields[0].isEmpty()) {
+						throw new IllegalArgumentException("unknown entry");
+					}
+				}
+				catch (IllegalArgumentException e) {
+					throw new IOException("Invalid course map " + input + " at line " + lineNumber + ": " + line);
+				}
+			}
+		}
+		finally {
+			reader.close();
+		}
+
+		if (direction == null) {
+			throw new IOException("Course map " + input + " has no direction");
+		}
+		return new CourseMap(direction, segments, spotDistance);
+	}
+
+	/**
+	 * Writes the map to a file, to be read by load()
+	 * @param output File File to write (overwritten if it exists)
+	 */
+	public void save(File output) throws IOException {
+		PrintWriter writer = new PrintWriter(new FileWriter(output));
+		try {
+			writer.println("direction " + direction);
+			writer.println("spot " + spotDistance);
+			for (CourseSegment segment : segments) {
+				writer.println("segment " + segment);
+			}
+			if (writer.checkError()) {
+				throw new IOException("Could not write course map " + output);
+			}
+		}
+		finally {
+			writer.close();
+		}
+	}
+
+	@Override
+	public String toString() {
+		return direction + ", spot at " + spotDistance + ", " + segments.size() + " segments";
+	}
+}
@@ -0,0 +1,81 @@
+/**
+ * Immutable part of a learned course, either straight or a corner, measured by the distance the wheels have
+ * turned since the robot started navigating to the spot
+ *
+ * @author Jack Deadman
+ * @author Joshua O'Leary
+ */
+
+public class CourseSegment {
+	private final boolean corner;
+	private final int start;
+	private final int end;
+	private final int turn;
+	private final int duration;
+
+	/**
+	 * Constructs a new CourseSegment
+	 * @param corner boolean True if the robot turns through this segment
+	 * @param start int Distance travelled where the segment starts (in wheel degrees)
+	 * @param end int Distance travelled where the segment ends (in wheel degrees)
+	 * @param turn int Difference between the right and left wheels' travel over the segment (in wheel
+	 * degrees, positive when turning left)
+	 * @param duration int Time taken to drive the segment when it was learned (in milliseconds)
+	 */
+	public CourseSegment(boolean corner, int start, int end, int turn, int duration) {
+		if (end < start) {
+			throw new IllegalArgumentException("Segment ends before it starts: " + start + " to " + end);
+		}
+		this.corner = corner;
+		this.start = start;
+		this.end = end;
+		this.turn = turn;
+		this.duration = duration;
+	}
+
+	/**
+	 * Determines whether the robot turns through this segment
+	 * @return boolean True if a corner, false if straight
+	 */
+	public boolean isCorner() {
+		return corner;
+	}
+
+	/**
+	 * Returns the distance travelled where the segment starts
+	 * @return int Distance (in wheel degrees)
+	 */
+	public int getStart() {
+		return start;
+	}
+
+	/**
+	 * Returns the distance travelled where the segment ends
+	 * @return int Distance (in wheel degrees)
+	 */
+	public int getEnd() {
+		return end;
+	}
+
+	/**
+	 * Returns how far the robot turns over the segment
+	 * @return int Difference between the right and left wheels' travel (in wheel degrees, positive when
+	 * turning left)
+	 */
+	public int getTurn() {
+		return turn;
+	}
+
+	/**
+	 * Returns the time taken to drive the segment when it was learned
+	 * @return int Duration (in milliseconds)
+	 */
+	public int getDuration() {
+		return duration;
+	}
+
+	@Override
+	public String toString() {
+		return (corner ? "CORNER" : "STRAIGHT") + " " + start + " " + end + " " + turn + " " + duration;
+	}
+}
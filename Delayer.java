@@ -7,13 +7,24 @@
 
 public class Delayer {
 	private int duration;
+	private final Clock clock;
+
+	/**
+	 * Constructs a new Delayer with a given duration, timed by a given clock
+	 * @param  duration int Duration of delay (in milliseconds)
+	 * @param  clock Clock Clock used to time the delay
+	 */
+	public Delayer(int duration, Clock clock) {
+		this.duration = duration;
+		this.clock = clock;
+	}
 
 	/**
 	 * Constructs a new Delayer with a given duration
 	 * @param  duration int Duration of delay (in milliseconds)
 	 */
 	public Delayer(int duration) {
-		this.duration = duration;
+		this(duration, Clock.SYSTEM);
 	}
 
 	/**
@@ -44,13 +55,13 @@ public class Delayer {
 	 * @param duration int Duration of delay (in milliseconds)
 	 */
 	public void waitFor(int duration) throws InterruptedException {
-		Thread.sleep(duration);
+		clock.sleep(duration);
 	}
 	/**
 	 * Applies the delay duration that has been previously set
 	 */
 	public void apply() throws InterruptedException {
-		Thread.sleep(duration);
+		clock.sleep(duration);
 	}
 
 	public static void main(String[] args) throws InterruptedException {
@@ -0,0 +1,71 @@
+/**
+ * Plans how the robot turns back to the line when an obstacle blocks it. The robot turns on the spot
+ * towards whichever side the line was under when the obstacle was seen, as the light sensors (ahead of the
+ * wheels) then meet the line again before a half turn rather than after it, and the turn is made quickly
+ * up to a margin before the line is expected, leaving only the last few degrees to be found slowly.
+ *
+ * @author Jack Deadman
+ * @author Joshua O'Leary
+ */
+
+public class DetourPlanner {
+	// Position of the light sensors (in cm), measured from our robot: distance ahead of the wheels' axle,
+	// and distance between the two sensors
+	public static final double SENSOR_OFFSET = 8.0;
+	public static final double SENSOR_SPACING = 6.0;
+
+	// Line error below which the robot is taken to be centred on the line, so neither side is quicker
+	private static final double CENTRED_ERROR = 0.1;
+
+	// Part of the turn left to be made slowly, before the sensors are expected to meet the line, covering
+	// errors in the estimate (in degrees)
+	private static final double ACQUIRE_MARGIN = 25;
+
+	/**
+	 * Estimates how far the line is to the side of the robot's centre
+	 * @param snapshot SensorSnapshot Readings in which the obstacle was detected
+	 * @return double Offset (in cm, positive if the line is to the left)
+	 */
+	public double getLineOffset(SensorSnapshot snapshot) {
+		return snapshot.getLineError() * SENSOR_SPACING / 2;
+	}
+
+	/**
+	 * Chooses the side to turn towards: the side the line is on, or the given side if the robot is centred
+	 * @param snapshot SensorSnapshot Readings in which the obstacle was detected
+	 * @param fallback Direction Side to turn towards if the robot is centred on the line
+	 * @return Direction Side to turn towards
+	 */
+	public Direction chooseSide(SensorSnapshot snapshot, Direction fallback) {
+		double error = snapshot.getLineError();
+		if (Math.abs(error) < CENTRED_ERROR) {
+			return fallback;
+		}
+		return error > 0 ? Direction.LEFT : Direction.RIGHT;
+	}
+
+	/**
+	 * Calculates how far the robot turns on the spot before its sensors meet the line behind it
+	 * @param snapshot SensorSnapshot Readings in which the obstacle was detected
+	 * @param side Direction Side turned towards
+	 * @return double Rotation (in degrees), less than 180 when turning towards the side the line is on
+	 */
+	public double getCrossingAngle(SensorSnapshot snapshot, Direction side) {
+		double offset = getLineOffset(snapshot);
+		double toward = side == Direction.LEFT ? offset : -offset;
+		// The sensors sweep a circle around the axle, meeting the line where it is the offset to the side
+		double sine = Math.max(-1, Math.min(1, toward / SENSOR_OFFSET));
+		return 180 - Math.toDegrees(Math.asin(sine));
+	}
+
+	/**
+	 * Calculates how far the robot can turn quickly before slowing to find the line
+	 * @param snapshot SensorSnapshot Readings in which the obstacle was detected
+	 * @param side Direction Side turned towards
+	 * @param turned double Rotation already made towards that side (in degrees, negative if made the other way)
+	 * @return double Rotation still to make quickly (in degrees, 0 if none)
+	 */
+	public double getFastTurn(SensorSnapshot snapshot, Direction side, double turned) {
+		return Math.max(0, getCrossingAngle(snapshot, side) - ACQUIRE_MARGIN - turned);
+	}
+}
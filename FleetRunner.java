@@ -0,0 +1,135 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs the main program on a fleet of simulated robots at once, each robot on its own thread with its own
+ * RobotControl, and reports how many runs the fleet completes per hour
+ *
+ * @author Jack Deadman
+ * @author Joshua O'Leary
+ */
+
+public class FleetRunner {
+	private final int robots;
+	private final int runsPerRobot;
+	private final int linkLatency;
+	private final String[] flags;
+
+	private final AtomicInteger runsCompleted = new AtomicInteger();
+	private final AtomicInteger runsSucceeded = new AtomicInteger();
+	private final AtomicLong simulatedTime = new AtomicLong();
+
+	/**
+	 * Constructs a new FleetRunner
+	 * @param robots int Number of robots in the fleet
+	 * @param runsPerRobot int Number of runs each robot makes, one after the other
+	 * @param linkLatency int Time added for each sensor read or motor command (in milliseconds)
+	 * @param flags String[] Robot flags for every run
+	 */
+	public FleetRunner(int robots, int runsPerRobot, int linkLatency, String[] flags) {
+		this.robots = robots;
+		this.runsPerRobot = runsPerRobot;
+		this.linkLatency = linkLatency;
+		this.flags = flags.clone();
+	}
+
+	/**
+	 * Makes every run of one robot, alternating the start direction and using a different seed for each run.
+	 * Each robot keeps its own course map (-l), learned on its first run, and each run is recorded (-t) to
+	 * its own file.
+	 * @param robot int Index of the robot in the fleet
+	 */
+	private void runRobot(int robot) throws InterruptedException {
+		for (int run = 0; run < runsPerRobot; run++) {
+			SimulatedBackend backend = Simulator.createBackend(robot * runsPerRobot + run, linkLatency);
+			RobotControl control = new RobotControl(backend);
+			control.setPrintMetricsOnClose(false);
+			Simulator.simulate(control, run % 2 == 0 ? Direction.LEFT : Direction.RIGHT, NavigationParameters.DEFAULT,
+					flags, "course-" + robot + ".map", "telemetry-" + robot + "-" + run + ".bin");
+
+			runsCompleted.incrementAndGet();
+			if (backend.isOnSpot()) {
+				runsSucceeded.incrementAndGet();
+			}
+			simulatedTime.addAndGet(backend.getElapsedMillis());
+		}
+	}
+
+	/**
+	 * Runs every robot of the fleet concurrently, waiting for all of them to finish
+	 */
+	public void run() throws InterruptedException, ExecutionException {
+		ExecutorService executor = Executors.newFixedThreadPool(robots);
+		try {
+			List<Future<?>> results = new ArrayList<Future<?>>();
+			for (int i = 0; i < robots; i++) {
+				final int robot = i;
+				results.add(executor.submit(new Callable<Void>() {
+					public Void call() throws InterruptedException {
+						runRobot(robot);
+						return null;
+					}
+				}));
+			}
+			for (Future<?> result : results) {
+				result.get();
+			}
+		}
+		finally {
+			executor.shutdownNow();
+		}
+	}
+
+	/**
+	 * Returns the number of runs completed so far
+	 * @return int Number of runs
+	 */
+	public int getRunsCompleted() {
+		return runsCompleted.get();
+	}
+
+	/**
+	 * Returns the number of runs in which the robot reached the spot
+	 * @return int Number of successful runs
+	 */
+	public int getRunsSucceeded() {
+		return runsSucceeded.get();
+	}
+
+	/**
+	 * Returns the average length of a run, as the robot would take in real time
+	 * @return double Mean simulated time per run (in milliseconds)
+	 */
+	public double getMeanRunTime() {
+		int runs = runsCompleted.get();
+		return runs == 0 ? 0 : (double)simulatedTime.get() / runs;
+	}
+
+	public static void main(String[] args) throws InterruptedException, ExecutionException {
+		// Usage: FleetRunner [robots] [runs per robot] [link latency] [Robot flags...]
+		int robots = args.length > 0 ? Integer.parseInt(args[0]) : Runtime.getRuntime().availableProcessors();
+		int runsPerRobot = args.length > 1 ? Integer.parseInt(args[1]) : 4;
+		int linkLatency = args.length > 2 ? Integer.parseInt(args[2]) : 5;
+		String[] flags = Arrays.copyOfRange(args, Math.min(3, args.length), args.length);
+
+		FleetRunner fleet = new FleetRunner(robots, runsPerRobot, linkLatency, flags);
+		long startTime = System.nanoTime();
+		fleet.run();
+		double realTime = (System.nanoTime() - startTime) / 1e6;
+
+		int runs = fleet.getRunsCompleted();
+		System.out.println("Robots: " + robots + ", runs: " + runs + ", reached spot: " + fleet.getRunsSucceeded());
+		System.out.printf("Simulated: %.0f runs/hour (real time %.0f ms)%n", runs * 3600000 / realTime, realTime);
+		// Real robots run in real time, so the fleet's throughput is limited by how long each run takes
+		System.out.printf("Mean run time: %.0f ms, fleet of %d real robots: %.0f runs/hour%n", fleet.getMeanRunTime(),
+				robots, robots * 3600000 / fleet.getMeanRunTime());
+	}
+}
@@ -0,0 +1,154 @@
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free histogram of latencies with roughly 12% precision over the full range of values (powers of two
+ * split into 8 sub-buckets), cheap enough to record every operation of the control loop
+ *
+ * @author Jack Deadman
+ * @author Joshua O'Leary
+ */
+
+public class LatencyHistogram {
+	// Values below LINEAR_LIMIT get a bucket each, above that each power of two has SUB_BUCKETS buckets
+	private static final int SUB_BUCKET_BITS = 3;
+	private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+	private static final int LINEAR_LIMIT = 2 * SUB_BUCKETS;
+	private static final int BUCKETS = LINEAR_LIMIT + (63 - SUB_BUCKET_BITS - 1) * SUB_BUCKETS;
+
+	private final String name;
+	private final Clock clock;
+	private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+	private final AtomicLong count = new AtomicLong();
+	private final AtomicLong total = new AtomicLong();
+	private final AtomicLong max = new AtomicLong();
+
+	/**
+	 * Constructs a new LatencyHistogram
+	 * @param name String Name of the operation being measured
+	 * @param clock Clock Clock operations are timed with
+	 */
+	public LatencyHistogram(String name, Clock clock) {
+		this.name = name;
+		this.clock = clock;
+	}
+
+	/**
+	 * Constructs a new LatencyHistogram timing operations with the system clock
+	 * @param name String Name of the operation being measured
+	 */
+	public LatencyHistogram(String name) {
+		this(name, Clock.SYSTEM);
+	}
+
+	/**
+	 * Returns the name of the operation being measured
+	 * @return String Name
+	 */
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * Records the time taken by an operation which started at a given time
+	 * @param start long Time the operation started (from the histogram's clock)
+	 */
+	public void recordSince(long start) {
+		record(clock.nanoTime() - start);
+	}
+
+	/**
+	 * Records a latency
+	 * @param nanos long Latency (in nanoseconds)
+	 */
+	public void record(long nanos) {
+		long value = Math.max(0, nanos);
+		counts.incrementAndGet(bucket(value));
+		count.incrementAndGet();
+		total.addAndGet(value);
+
+		long currentMax = max.get();
+		while (value > currentMax && !max.compareAndSet(currentMax, value)) {
+			currentMax = max.get();
+		}
+	}
+
+	/**
+	 * Clears all recorded latencies
+	 */
+	public void reset() {
+		for (int i = 0; i < BUCKETS; i++) {
+			counts.set(i, 0);
+		}
+		count.set(0);
+		total.set(0);
+		max.set(0);
+	}
+
+	/**
+	 * Returns the number of latencies recorded
+	 * @return long Count
+	 */
+	public long getCount() {
+		return count.get();
+	}
+
+	/**
+	 * Returns the total of all latencies recorded
+	 * @return long Total (in nanoseconds)
+	 */
+	public long getTotal() {
+		return total.get();
+	}
+
+	/**
+	 * Returns the largest latency recorded
+	 * @return long Maximum (in nanoseconds)
+	 */
+	public long getMax() {
+		return max.get();
+	}
+
+	/**
+	 * Returns the latency below which a given fraction of recorded latencies lie
+	 * @param percentile double Percentile (between 0 and 100)
+	 * @return long Latency (in nanoseconds), accurate to the width of its bucket
+	 */
+	public long getPercentile(double percentile) {
+		long target = (long)Math.ceil(count.get() * percentile / 100);
+		long cumulative = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			cumulative += counts.get(i);
+			if (cumulative >= Math.max(1, target)) {
+				return Math.min(bucketTop(i), max.get());
+			}
+		}
+		return max.get();
+	}
+
+	private static int bucket(long value) {
+		if (value < LINEAR_LIMIT) {
+			return (int)value;
+		}
+		int exponent = 63 - Long.numberOfLeadingZeros(value);
+		int subBucket = (int)(value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+		return LINEAR_LIMIT + (exponent - SUB_BUCKET_BITS - 1) * SUB_BUCKETS + subBucket;
+	}
+
+	private static long bucketTop(int bucket) {
+		if (bucket < LINEAR_LIMIT) {
+			return bucket;
+		}
+		int exponent = (bucket - LINEAR_LIMIT) / SUB_BUCKETS + SUB_BUCKET_BITS + 1;
+		long subBucket = (bucket - LINEAR_LIMIT) % SUB_BUCKETS;
+		return ((SUB_BUCKETS + subBucket + 1) << (exponent - SUB_BUCKET_BITS)) - 1;
+	}
+
+	@Override
+	public String toString() {
+		long n = count.get();
+		return String.format("%-22s %8d calls  mean %9.3f  p50 %9.3f  p90 %9.3f  p99 %9.3f  max %9.3f ms", name, n,
+				n == 0 ? 0 : total.get() / 1e6 / n, getPercentile(50) / 1e6, getPercentile(90) / 1e6,
+				getPercentile(99) / 1e6, max.get() / 1e6);
+	}
+}
@@ -0,0 +1,309 @@
+/**
+ * Keeps running statistics of a light sensor's readings (minimum, maximum and a histogram) and derives
+ * the thresholds for detecting the line and the spot from them, so the thresholds follow changes in
+ * ambient light. Adding a sample is O(1); thresholds are recalculated every few samples from the histogram.
+ *
+ * @author Jack Deadman
+ * @author Joshua O'Leary
+ */
+
+public class LightCalibrator {
+	// Histogram covers the full range of raw light values (0 - 1023)
+	private static final int BIN_WIDTH = 8;
+	private static final int BINS = 1024 / BIN_WIDTH;
+
+	// Number of samples between recalculating thresholds
+	private static final int RECALCULATE_INTERVAL = 32;
+
+	// Once this many samples are held, all counts are halved so old readings gradually stop counting
+	private static final int DECAY_LIMIT = 4096;
+
+	// A split is only trusted if each side holds at least this fraction of samples and their averages
+	// differ by at least this many raw values
+	private static final double MIN_CLASS_FRACTION = 0.02;
+	private static final int MIN_CONTRAST = 25;
+
+	// Readings over the edge of the line are blends of black and white, so black is taken from the darkest
+	// tenth of the dark readings, while white is the median of the bright readings
+	private static final double BLACK_PERCENTILE = 0.1;
+	private static final double WHITE_PERCENTILE = 0.5;
+
+	// The spot must be darker than black readings of the line by at least this fraction of the difference
+	// between black and white
+	private static final double SPOT_CONTRAST = 0.25;
+
+	// Number of readings the defaults count as when weighed against discounted readings
+	private static final int DEFAULT_WEIGHT = 48;
+
+	private final int[] bins = new int[BINS];
+	private int count;
+	private int sinceRecalculation;
+	private int min = Integer.MAX_VALUE;
+	private int max = Integer.MIN_VALUE;
+
+	private final int defaultLineThreshold;
+	private final int defaultBlackValue;
+	private final int defaultWhiteValue;
+	private volatile int lineThreshold;
+	private volatile int spotThreshold;
+	private volatile double blackValue;
+	private volatile double whiteValue;
+	private volatile boolean calibrated;
+
+	/**
+	 * Constructs a new LightCalibrator
+	 * @param defaultLineThreshold int Line threshold used until enough readings have been seen
+	 * @param defaultBlackValue int Typical reading over black used until enough readings have been seen
+	 * @param defaultWhiteValue int Typical reading over white used until enough readings have been seen
+	 */
+	public LightCalibrator(int defaultLineThreshold, int defaultBlackValue, int defaultWhiteValue) {
+		this.defaultLineThreshold = defaultLineThreshold;
+		this.defaultBlackValue = defaultBlackValue;
+		this.defaultWhiteValue = defaultWhiteValue;
+		this.lineThreshold = defaultLineThreshold;
+		this.spotThreshold = defaultLineThreshold;
+		this.blackValue = defaultBlackValue;
+		this.whiteValue = defaultWhiteValue;
+	}
+
+	/**
+	 * Adds a reading to the statistics
+	 * @param lightValue int Raw light sensor reading
+	 */
+	public synchronized void addSample(int lightValue) {
+		int value = Math.max(0, Math.min(1023, lightValue));
+		bins[value / BIN_WIDTH]++;
+		count++;
+		min = Math.min(min, value);
+		max = Math.max(max, value);
+
+		if (++sinceRecalculation >= RECALCULATE_INTERVAL) {
+			sinceRecalculation = 0;
+			if (count >= DECAY_LIMIT) {
+				decay();
+			}
+			recalculate();
+		}
+	}
+
+	/**
+	 * Forgets all readings and goes back to the default thresholds
+	 */
+	public synchronized void reset() {
+		for (int i = 0; i < BINS; i++) {
+			bins[i] = 0;
+		}
+		count = 0;
+		sinceRecalculation = 0;
+		min = Integer.MAX_VALUE;
+		max = Integer.MIN_VALUE;
+		lineThreshold = defaultLineThreshold;
+		spotThreshold = defaultLineThreshold;
+		blackValue = defaultBlackValue;
+		whiteValue = defaultWhiteValue;
+		calibrated = false;
+	}
+
+	/**
+	 * Makes the readings held count as only a given number of readings. Used for a short burst of readings
+	 * (e.g. a calibration sweep, which mostly sees the edges of the line) which should give a starting point
+	 * without overriding the defaults: the thresholds are weighed against the defaults, and readings added
+	 * later soon outweigh the burst.
+	 * @param samples int Number of readings the readings held count as
+	 */
+	public synchronized void discount(int samples) {
+		if (count > samples) {
+			int total = 0;
+			for (int i = 0; i < BINS; i++) {
+				bins[i] = (int)((long)bins[i] * samples / count);
+				total += bins[i];
+			}
+			count = total;
+		}
+		if (calibrated) {
+			boolean spotSeen = spotThreshold < lineThreshold;
+			double weight = (double)count / (count + DEFAULT_WEIGHT);
+			blackValue = defaultBlackValue + (blackValue - defaultBlackValue) * weight;
+			whiteValue = defaultWhiteValue + (whiteValue - defaultWhiteValue) * weight;
+			lineThreshold = (int)((blackValue + whiteValue) / 2);
+			spotThreshold = spotSeen ? Math.min(spotThreshold, lineThreshold) : lineThreshold;
+		}
+	}
+
+	/**
+	 * Returns the highest reading still counted as the black line
+	 * @return int Line threshold
+	 */
+	public int getLineThreshold() {
+		return lineThreshold;
+	}
+
+	/**
+	 * Returns the highest reading still counted as the spot (the same as the line threshold until the spot
+	 * has been seen as darker than the line)
+	 * @return int Spot threshold
+	 */
+	public int getSpotThreshold() {
+		return spotThreshold;
+	}
+
+	/**
+	 * Returns the average reading over black
+	 * @return double Black value
+	 */
+	public double getBlackValue() {
+		return blackValue;
+	}
+
+	/**
+	 * Returns the average reading over white
+	 * @return double White value
+	 */
+	public double getWhiteValue() {
+		return whiteValue;
+	}
+
+	/**
+	 * Determines whether the thresholds have been derived from readings rather than the defaults
+	 * @return boolean True if calibrated
+	 */
+	public boolean isCalibrated() {
+		return calibrated;
+	}
+
+	/**
+	 * Returns the lowest reading seen
+	 * @return int Minimum reading
+	 */
+	public synchronized int getMin() {
+		return min;
+	}
+
+	/**
+	 * Returns the highest reading seen
+	 * @return int Maximum reading
+	 */
+	public synchronized int getMax() {
+		return max;
+	}
+
+	/**
+	 * Halves all counts, recalculating the minimum and maximum from what remains
+	 */
+	private void decay() {
+		count = 0;
+		min = Integer.MAX_VALUE;
+		max = Integer.MIN_VALUE;
+		for (int i = 0; i < BINS; i++) {
+			bins[i] /= 2;
+			count += bins[i];
+			if (bins[i] > 0) {
+				min = Math.min(min, i * BIN_WIDTH);
+				max = Math.max(max, (i + 1) * BIN_WIDTH - 1);
+			}
+		}
+	}
+
+	/**
+	 * Splits the histogram into dark and bright readings (line against floor), placing the line threshold
+	 * halfway between black and white, then splits the dark readings again (spot against line)
+	 */
+	private void recalculate() {
+		double[] line = split(0, BINS);
+		if (line == null) {
+			return;
+		}
+		int splitBin = (int)line[0] / BIN_WIDTH + 1;
+		double black = percentile(0, splitBin, BLACK_PERCENTILE);
+		double white = percentile(splitBin, BINS, WHITE_PERCENTILE);
+		blackValue = black;
+		whiteValue = white;
+		lineThreshold = (int)((black + white) / 2);
+		calibrated = true;
+
+		// The darker group is only the spot if it is clearly darker than black readings of the line itself,
+		// rather than the line's centre against its edges
+		double[] spot = split(0, splitBin);
+		if (spot != null) {
+			double lineBlack = percentile((int)spot[0] / BIN_WIDTH + 1, splitBin, BLACK_PERCENTILE);
+			if (spot[1] <= lineBlack - (white - black) * SPOT_CONTRAST) {
+				spotThreshold = (int)((spot[1] + lineBlack) / 2);
+				return;
+			}
+		}
+		spotThreshold = lineThreshold;
+	}
+
+	/**
+	 * Finds the reading below which a given fraction of a range of the histogram lies
+	 * @param from int First bin of range
+	 * @param to int Bin after the end of range
+	 * @param fraction double Fraction of readings (between 0 and 1)
+	 * @return double Reading at that fraction
+	 */
+	private double percentile(int from, int to, double fraction) {
+		long total = 0;
+		for (int i = from; i < to; i++) {
+			total += bins[i];
+		}
+		long target = (long)Math.ceil(total * fraction);
+		long cumulative = 0;
+		for (int i = from; i < to; i++) {
+			cumulative += bins[i];
+			if (cumulative >= target && bins[i] > 0) {
+				return binCentre(i);
+			}
+		}
+		return binCentre(to - 1);
+	}
+
+	/**
+	 * Finds the split of a range of the histogram which best separates it into two groups (Otsu's method)
+	 * @param from int First bin of range
+	 * @param to int Bin after the end of range
+	 * @return double[] {threshold, dark average, bright average}, or null if there is no clear split
+	 */
+	private double[] split(int from, int to) {
+		long total = 0;
+		double totalSum = 0;
+		for (int i = from; i < to; i++) {
+			total += bins[i];
+			totalSum += (double)bins[i] * binCentre(i);
+		}
+		if (total == 0) {
+			return null;
+		}
+
+		double bestVariance = -1;
+		double[] best = null;
+		long darkCount = 0;
+		double darkSum = 0;
+		for (int i = from; i < to - 1; i++) {
+			darkCount += bins[i];
+			darkSum += (double)bins[i] * binCentre(i);
+			long brightCount = total - darkCount;
+			if (darkCount < total * MIN_CLASS_FRACTION || brightCount < total * MIN_CLASS_FRACTION) {
+				continue;
+			}
+
+			double darkMean = darkSum / darkCount;
+			double brightMean = (totalSum - darkSum) / brightCount;
+			double variance = (double)darkCount * brightCount * (brightMean - darkMean) * (brightMean - darkMean);
+			if (variance > bestVariance) {
+				bestVariance = variance;
+				best = new double[] {(i + 1) * BIN_WIDTH - 1, darkMean, brightMean};
+			}
+		}
+		return best != null && best[2] - best[1] >= MIN_CONTRAST ? best : null;
+	}
+
+	private static double binCentre(int bin) {
+		return bin * BIN_WIDTH + BIN_WIDTH / 2.0;
+	}
+
+	@Override
+	public String toString() {
+		return "line " + lineThreshold + ", spot " + spotThreshold + (calibrated ? "" : " (default)")
+				+ ", range " + min + "-" + max;
+	}
+}
@@ -0,0 +1,183 @@
+/**
+ * Searches for the line when the robot has lost it, e.g. by overshooting a bend. Going forward is right while
+ * the line is between the sensors, but once neither sensor has seen the line for a while it has more likely
+ * slipped out past the sensor which saw it last, so the search starts on that side and widens in stages,
+ * each given a fixed time: a turn towards that side which gradually tightens, then sweeps on the spot from
+ * side to side, then a widening spiral. If the line has still not been found the robot is stopped rather
+ * than left to drive off.
+ *
+ * @author Jack Deadman
+ * @author Joshua O'Leary
+ */
+
+public class LineRecovery {
+	/**
+	 * Stages of the search, in the order they are tried
+	 */
+	public enum Stage {
+		TRACKING, BIAS, SWEEP, SPIRAL
+	}
+
+	// Time neither sensor may see the line before searching (in nanoseconds). The line can stay between the
+	// sensors for much longer on a straight, but the first stage of the search only brings it back under a
+	// sensor if so, which costs little.
+	private static final long LOST_TIME = 1000000000L;
+
+	// Time spent turning towards the side the line was last seen, with the ratio between the wheel speeds at
+	// the start and end of it
+	private static final long BIAS_TIME = 3000000000L;
+	private static final double BIAS_START_FACTOR = 1.2;
+	private static final double BIAS_END_FACTOR = 2.0;
+
+	// Time of the first sweep on the spot, each later sweep going back across and further out by the same time,
+	// and the number of sweeps
+	private static final long SWEEP_TIME = 500000000L;
+	private static final int SWEEPS = 4;
+
+	// Time spent spiralling outwards, with the ratio between the wheel speeds at the start and end of it
+	private static final long SPIRAL_TIME = 6000000000L;
+	private static final double SPIRAL_START_FACTOR = 3.0;
+	private static final double SPIRAL_END_FACTOR = 1.1;
+
+	private final RobotControl control;
+
+	// Sensor which saw the line last on its own, and when either sensor last saw it
+	private Direction lastSeen;
+	private long lastSeenTime;
+	private boolean started;
+
+	private Stage stage = Stage.TRACKING;
+	private long recoveries;
+
+	/**
+	 * Constructs a new LineRecovery
+	 * @param control RobotControl Robot to steer while searching
+	 */
+	public LineRecovery(RobotControl control) {
+		this.control = control;
+	}
+
+	/**
+	 * Starts tracking the line again, e.g. after lining up or turning around
+	 * @param side Direction Side to search first if the line is lost before either sensor has seen it alone
+	 */
+	public void reset(Direction side) {
+		lastSeen = side;
+		started = false;
+		stage = Stage.TRACKING;
+	}
+
+	/**
+	 * Adds a set of readings, and steers the robot to search for the line if it has been lost
+	 * @param snapshot SensorSnapshot Readings for the current cycle
+	 * @return boolean True if the robot is searching (and has been steered), false if the line is close enough
+	 * for normal steering
+	 * @throws IllegalStateException If every stage of the search has run out of time (the robot is stopped)
+	 */
+	public boolean update(SensorSnapshot snapshot) {
+		long now = snapshot.getTimestamp();
+		boolean left = snapshot.blackDetectedLeft();
+		boolean right = snapshot.blackDetectedRight();
+		if (!started || left || right) {
+			if (left != right) {
+				lastSeen = left ? Direction.LEFT : Direction.RIGHT;
+			}
+			if (stage != Stage.TRACKING) {
+				recoveries++;
+			}
+			lastSeenTime = now;
+			started = true;
+			stage = Stage.TRACKING;
+			return false;
+		}
+
+		long lost = now - lastSeenTime - LOST_TIME;
+		if (lost < 0) {
+			return false;
+		}
+
+		if (lost < BIAS_TIME) {
+			stage = Stage.BIAS;
+			double progress = (double)lost / BIAS_TIME;
+			turn(lastSeen, BIAS_START_FACTOR + (BIAS_END_FACTOR - BIAS_START_FACTOR) * progress);
+			return true;
+		}
+		lost -= BIAS_TIME;
+
+		// Sweeps alternate sides, starting towards the line, each one step longer than the last, so the
+		// robot swings a step further out to each side in turn
+		long sweepStart = 0;
+		for (int sweep = 1; sweep <= SWEEPS; sweep++) {
+			long sweepEnd = sweepStart + sweep * SWEEP_TIME;
+			if (lost < sweepEnd) {
+				stage = Stage.SWEEP;
+				spin(sweep % 2 == 1 ? lastSeen : opposite(lastSeen));
+				return true;
+			}
+			sweepStart = sweepEnd;
+		}
+		lost -= sweepStart;
+
+		if (lost < SPIRAL_TIME) {
+			stage = Stage.SPIRAL;
+			double progress = (double)lost / SPIRAL_TIME;
+			turn(lastSeen, SPIRAL_START_FACTOR + (SPIRAL_END_FACTOR - SPIRAL_START_FACTOR) * progress);
+			return true;
+		}
+
+		control.stop();
+		throw new IllegalStateException("Line lost for " + (now - lastSeenTime) / 1000000 + " ms, search abandoned");
+	}
+
+	/**
+	 * Returns the stage of the search reached at the last update
+	 * @return Stage Stage, TRACKING if the line has not been lost
+	 */
+	public Stage getStage() {
+		return stage;
+	}
+
+	/**
+	 * Returns the side the line was last seen on by a single sensor
+	 * @return Direction Side, or the side given when reset if neither sensor has seen the line alone since
+	 */
+	public Direction getLastSeen() {
+		return lastSeen;
+	}
+
+	/**
+	 * Returns the number of times the line has been found again after searching for it
+	 * @return long Number of recoveries
+	 */
+	public long getRecoveries() {
+		return recoveries;
+	}
+
+	private void turn(Direction side, double speedFactor) {
+		if (side == Direction.LEFT) {
+			control.goLeft(speedFactor);
+		}
+		else {
+			control.goRight(speedFactor);
+		}
+	}
+
+	private void spin(Direction side) {
+		if (side == Direction.LEFT) {
+			control.goLeftTurnOnSpot();
+		}
+		else {
+			control.goRightTurnOnSpot();
+		}
+	}
+
+	private static Direction opposite(Direction side) {
+		return side == Direction.LEFT ? Direction.RIGHT : Direction.LEFT;
+	}
+
+	@Override
+	public String toString() {
+		return recoveries + " recoveries, last seen " + (lastSeen == null ? "by neither sensor" : "on the "
+				+ lastSeen.toString().toLowerCase());
+	}
+}
@@ -0,0 +1,66 @@
+/**
+ * Median of the most recent readings of a sensor, so that a single spurious reading (such as the ultrasonic
+ * sensor missing an echo and reporting 255) is ignored rather than acted on
+ *
+ * @author Jack Deadman
+ * @author Joshua O'Leary
+ */
+
+public class MedianFilter {
+	private final int[] window;
+	private final int[] sorted;
+	private int size;
+	private int next;
+
+	/**
+	 * Constructs a new MedianFilter
+	 * @param capacity int Number of readings the median is taken over
+	 */
+	public MedianFilter(int capacity) {
+		window = new int[capacity];
+		sorted = new int[capacity];
+	}
+
+	/**
+	 * Adds a reading, replacing the oldest once the window is full
+	 * @param value int New reading
+	 * @return int Median of the readings in the window
+	 */
+	public int add(int value) {
+		window[next] = value;
+		next = (next + 1) % window.length;
+		if (size < window.length) {
+			size++;
+		}
+		return getMedian();
+	}
+
+	/**
+	 * Returns the median of the readings in the window (the lower of the middle two if there is an even number)
+	 * @return int Median, or 0 if there are no readings
+	 */
+	public int getMedian() {
+		if (size == 0) {
+			return 0;
+		}
+		// Insertion sort, as the window only holds a handful of readings
+		for (int i = 0; i < size; i++) {
+			int value = window[i];
+			int j = i;
+			while (j > 0 && sorted[j - 1] > value) {
+				sorted[j] = sorted[j - 1];
+				j--;
+			}
+			sorted[j] = value;
+		}
+		return sorted[(size - 1) / 2];
+	}
+
+	/**
+	 * Forgets all readings
+	 */
+	public void reset() {
+		size = 0;
+		next = 0;
+	}
+}
@@ -0,0 +1,166 @@
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Plays a tune of equal length notes, starting each note at a fixed time from the start of the tune rather
+ * than once the previous one has been sent, so the tune keeps time however long each note takes to reach
+ * the robot. A note whose time has passed completely by the time it could be played is skipped rather than
+ * played late. With a real-time backend the tune is played on a background thread, so playing it never
+ * holds up the thread which started it; otherwise (as time only passes when the robot's thread sleeps) it is
+ * played by calling step() as time goes on, or play() to play it all at once.
+ *
+ * @author Jack Deadman
+ * @author Joshua O'Leary
+ */
+
+public class MelodySequencer implements Runnable {
+	private final RobotControl control;
+	private final Clock clock;
+	private final int[] frequencies;
+	private final long noteLength;
+
+	// Completed once the last note has finished sounding
+	private final CompletableFuture<Void> finished = new CompletableFuture<Void>();
+
+	// Index of the next note to play, and the time the tune started (guarded by this)
+	private int next;
+	private long startTime;
+	private boolean started;
+
+	private Thread thread;
+
+	/**
+	 * Constructs a new MelodySequencer
+	 * @param control RobotControl Robot to play the notes on
+	 * @param frequencies int[] Frequency of each note (in hertz)
+	 * @param noteLength int Duration of each note (in milliseconds)
+	 */
+	public MelodySequencer(RobotControl control, int[] frequencies, int noteLength) {
+		if (noteLength <= 0) {
+			throw new IllegalArgumentException("Invalid note length: " + noteLength);
+		}
+		this.control = control;
+		this.clock = control.getClock();
+		this.frequencies = frequencies.clone();
+		this.noteLength = noteLength * 1000000L;
+	}
+
+	/**
+	 * Starts playing the tune on a background thread if the robot's backend is real-time
+	 * @return boolean True if the tune is being played in the background, false if step() must be called to
+	 * play it
+	 */
+	public synchronized boolean start() {
+		if (!control.getBackend().isRealTime()) {
+			return false;
+		}
+		if (thread == null) {
+			thread = new Thread(this, "MelodySequencer");
+			thread.setDaemon(true);
+			thread.start();
+		}
+		return true;
+	}
+
+	/**
+	 * Returns a future completed once the last note has finished sounding
+	 * @return CompletableFuture&lt;Void&gt; Completed when the tune finishes, exceptionally if a note could
+	 * not be played, or cancelled if the tune is stopped
+	 */
+	public CompletableFuture<Void> getFinished() {
+		return finished;
+	}
+
+	/**
+	 * Plays the note due at the given time, if it has not been played already
+	 * @param now long Current time (from the robot's clock, in nanoseconds)
+	 * @return boolean True until the last note has finished sounding
+	 */
+	public synchronized boolean step(long now) {
+		if (finished.isDone()) {
+			return false;
+		}
+		if (!started) {
+			startTime = now;
+			started = true;
+		}
+
+		long end = startTime + frequencies.length * noteLength;
+		if (now >= end) {
+			finished.complete(null);
+			return false;
+		}
+
+		int due = (int)((now - startTime) / noteLength);
+		if (due >= next) {
+			// Only what is left of the note's time is played, so a late note does not overlap the next one
+			long remaining = startTime + (due + 1) * noteLength - now;
+			next = due + 1;
+			try {
+				control.beep((int)Math.max(1, remaining / 1000000L), frequencies[due]);
+			}
+			catch (RuntimeException e) {
+				finished.completeExceptionally(e);
+				throw e;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Returns the time the next note is due, or the tune ends if every note has been played
+	 * @return long Time (from the robot's clock, in nanoseconds)
+	 */
+	public synchronized long getNextDeadline() {
+		return startTime + next * noteLength;
+	}
+
+	/**
+	 * Stops playing the tune, cancelling its future (the note sounding carries on until it ends)
+	 */
+	public void stop() throws InterruptedException {
+		Thread player;
+		synchronized (this) {
+			finished.cancel(false);
+			player = thread;
+		}
+		if (player != null && player != Thread.currentThread()) {
+			player.interrupt();
+			player.join();
+		}
+	}
+
+	/**
+	 * Plays the whole tune on the calling thread, sleeping until each note is due
+	 * @throws InterruptedException If the calling thread is interrupted (the tune is cancelled)
+	 */
+	public void play() throws InterruptedException {
+		try {
+			while (step(clock.nanoTime())) {
+				long wait = getNextDeadline() - clock.nanoTime();
+				if (wait > 0) {
+					// Rounded up, so the note is never asked for before it is due
+					clock.sleep((wait + 999999L) / 1000000L);
+				}
+			}
+		}
+		catch (InterruptedException e) {
+			finished.cancel(false);
+			throw e;
+		}
+	}
+
+	@Override
+	public void run() {
+		try {
+			play();
+		}
+		catch (InterruptedException e) {
+			// Interrupted by stop(), which has already cancelled the future
+			Thread.currentThread().interrupt();
+		}
+		catch (RuntimeException e) {
+			// Already recorded in the future by step()
+			System.err.println("Tune could not be played: " + e.getMessage());
+		}
+	}
+}
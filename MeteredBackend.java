@@ -0,0 +1,113 @@
+/**
+ * Backend wrapper which records the latency (by the backend's own clock) of every sensor read, motor write
+ * and tone, showing how much of each control cycle is spent waiting on the robot
+ *
+ * @author Jack Deadman
+ * @author Joshua O'Leary
+ */
+
+public class MeteredBackend implements RobotBackend {
+	private final RobotBackend backend;
+
+	private final LatencyHistogram lightLeft;
+	private final LatencyHistogram lightRight;
+	private final LatencyHistogram distance;
+	private final LatencyHistogram tachoCount;
+	private final LatencyHistogram motorSpeed;
+	private final LatencyHistogram motorDirection;
+	private final LatencyHistogram tone;
+
+	/**
+	 * Constructs a new MeteredBackend
+	 * @param backend RobotBackend Backend to measure
+	 * @param metrics ControlMetrics Metrics to record latencies into (timed with the same clock as the backend)
+	 */
+	public MeteredBackend(RobotBackend backend, ControlMetrics metrics) {
+		this.backend = backend;
+		lightLeft = metrics.histogram("backend.lightLeft");
+		lightRight = metrics.histogram("backend.lightRight");
+		distance = metrics.histogram("backend.distance");
+		tachoCount = metrics.histogram("backend.tachoCount");
+		motorSpeed = metrics.histogram("backend.motorSpeed");
+		motorDirection = metrics.histogram("backend.motorDirection");
+		tone = metrics.histogram("backend.tone");
+	}
+
+	/**
+	 * Returns the backend being measured
+	 * @return RobotBackend Wrapped backend
+	 */
+	public RobotBackend getBackend() {
+		return backend;
+	}
+
+	public void open() {
+		backend.open();
+	}
+
+	public void close() {
+		backend.close();
+	}
+
+	public void prepareSensors() {
+		backend.prepareSensors();
+	}
+
+	public boolean isRealTime() {
+		return backend.isRealTime();
+	}
+
+	public int getLightValueLeft() {
+		long start = backend.nanoTime();
+		int value = backend.getLightValueLeft();
+		lightLeft.recordSince(start);
+		return value;
+	}
+
+	public int getLightValueRight() {
+		long start = backend.nanoTime();
+		int value = backend.getLightValueRight();
+		lightRight.recordSince(start);
+		return value;
+	}
+
+	public int getDistance() {
+		long start = backend.nanoTime();
+		int value = backend.getDistance();
+		distance.recordSince(start);
+		return value;
+	}
+
+	public int getTachoCount(int motor) {
+		long start = backend.nanoTime();
+		int value = backend.getTachoCount(motor);
+		tachoCount.recordSince(start);
+		return value;
+	}
+
+	public void setMotorSpeed(int motor, int speed) {
+		long start = backend.nanoTime();
+		backend.setMotorSpeed(motor, speed);
+		motorSpeed.recordSince(start);
+	}
+
+	public void setMotorDirection(int motor, MotorDirection direction, boolean verify) {
+		long start = backend.nanoTime();
+		backend.setMotorDirection(motor, direction, verify);
+		motorDirection.recordSince(start);
+	}
+
+	public void playTone(int hz, int duration) {
+		long start = backend.nanoTime();
+		backend.playTone(hz, duration);
+		tone.recordSince(start);
+	}
+
+	public long nanoTime() {
+		return backend.nanoTime();
+	}
+
+	public void sleep(long millis) throws InterruptedException {
+		backend.sleep(millis);
+	}
+}
@@ -0,0 +1,57 @@
+/**
+ * Immutable state requested for a single motor (speed and direction)
+ *
+ * @author Jack Deadman
+ * @author Joshua O'Leary
+ */
+
+public class MotorCommand {
+	// Shared command for stopping, as stopping does not depend on speed
+	public static final MotorCommand STOP = new MotorCommand(0, MotorDirection.STOPPED);
+
+	private final int speed;
+	private final MotorDirection direction;
+
+	/**
+	 * Constructs a new MotorCommand
+	 * @param speed int Speed (degrees per second), ignored when stopping
+	 * @param direction MotorDirection Direction to rotate in (or STOPPED)
+	 */
+	public MotorCommand(int speed, MotorDirection direction) {
+		this.speed = speed;
+		this.direction = direction;
+	}
+
+	/**
+	 * Returns the requested speed
+	 * @return int Speed (degrees per second)
+	 */
+	public int getSpeed() {
+		return speed;
+	}
+
+	/**
+	 * Returns the requested direction
+	 * @return MotorDirection Direction
+	 */
+	public MotorDirection getDirection() {
+		return direction;
+	}
+
+	/**
+	 * Sends the command to a motor
+	 * @param motor CachedMotor Motor to apply the command to
+	 * @param verify boolean True to wait for the robot to acknowledge the change of direction
+	 */
+	public void applyTo(CachedMotor motor, boolean verify) {
+		if (direction != MotorDirection.STOPPED) {
+			motor.setSpeed(speed);
+		}
+		motor.setDirection(direction, verify);
+	}
+
+	@Override
+	public String toString() {
+		return direction + "@" + speed;
+	}
+}
@@ -0,0 +1,155 @@
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Background thread that sends motor commands to the robot, so that the control loop never waits on
+ * the connection. Each motor has a single pending slot: a newer command replaces an unsent one, so
+ * stale steering commands are dropped rather than queued.
+ *
+ * @author Jack Deadman
+ * @author Joshua O'Leary
+ */
+
+public class MotorCommandWriter implements Runnable {
+	private final CachedMotor[] motors;
+
+	// Latest unsent command for each motor (null if there is nothing to send)
+	private final AtomicReferenceArray<MotorCommand> pending;
+
+	// Held while taking and sending a command, so a command sent immediately can never be overtaken
+	// by an older one the writer had already taken
+	private final Object sendLock = new Object();
+
+	private volatile boolean running;
+	private Thread thread;
+
+	// Error which stopped the background thread, after which commands are sent on the submitting thread
+	private volatile RuntimeException failure;
+
+	private long commandsDropped;
+
+	/**
+	 * Constructs a new MotorCommandWriter
+	 * @param motors CachedMotor[] Motors to send commands to (indexes are used to identify motors)
+	 */
+	public MotorCommandWriter(CachedMotor... motors) {
+		this.motors = motors;
+		this.pending = new AtomicReferenceArray<MotorCommand>(motors.length);
+	}
+
+	/**
+	 * Starts sending commands on a background thread
+	 */
+	public synchronized void start() {
+		if (running) {
+			return;
+		}
+		running = true;
+		thread = new Thread(this, "MotorCommandWriter");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	/**
+	 * Sends any pending commands and stops the background thread
+	 */
+	public synchronized void stop() throws InterruptedException {
+		if (!running) {
+			return;
+		}
+		running = false;
+		LockSupport.unpark(thread);
+		thread.join();
+		flush();
+	}
+
+	/**
+	 * Determines whether the writer is running
+	 * @return boolean True if writer is running (false once it has failed)
+	 */
+	public boolean isRunning() {
+		return running && failure == null;
+	}
+
+	/**
+	 * Queues a command to be sent to a motor, replacing any command for that motor that has not been sent yet.
+	 * If the writer is not running, or has failed, the command is sent straight away (so any error is thrown
+	 * to the caller rather than the command being left unsent).
+	 * @param motor int Index of motor
+	 * @param command MotorCommand Command to send
+	 */
+	public void submit(int motor, MotorCommand command) {
+		if (!isRunning()) {
+			send(motor, command, false);
+			return;
+		}
+		MotorCommand replaced = pending.getAndSet(motor, command);
+		if (replaced != null) {
+			synchronized (this) {
+				commandsDropped++;
+			}
+		}
+		if (failure != null) {
+			// The writer failed after the check above, so nothing would send the command
+			flush();
+			return;
+		}
+		LockSupport.unpark(thread);
+	}
+
+	/**
+	 * Sends a command to a motor straight away on the calling thread, discarding any pending command for
+	 * that motor. Used for commands which must not be delayed, such as stopping.
+	 * @param motor int Index of motor
+	 * @param command MotorCommand Command to send
+	 * @param verify boolean True to wait for the robot to acknowledge the command
+	 */
+	public void send(int motor, MotorCommand command, boolean verify) {
+		synchronized (sendLock) {
+			pending.set(motor, null);
+			command.applyTo(motors[motor], verify);
+		}
+	}
+
+	/**
+	 * Sends all pending commands on the calling thread
+	 * @return boolean True if any commands were sent
+	 */
+	private boolean flush() {
+		boolean sent = false;
+		for (int i = 0; i < motors.length; i++) {
+			synchronized (sendLock) {
+				MotorCommand command = pending.getAndSet(i, null);
+				if (command != null) {
+					command.applyTo(motors[i], false);
+					sent = true;
+				}
+			}
+		}
+		return sent;
+	}
+
+	/**
+	 * Returns the number of queued commands replaced by a newer command before being sent
+	 * @return long Number of commands dropped
+	 */
+	public synchronized long getCommandsDropped() {
+		return commandsDropped;
+	}
+
+	@Override
+	public void run() {
+		try {
+			while (running) {
+				if (!flush()) {
+					LockSupport.park(this);
+				}
+			}
+		}
+		catch (RuntimeException e) {
+			// e.g. the connection could not be restored; later commands are sent by submit() itself
+			failure = e;
+			System.err.println("Motor command writer failed: " + e.getMessage());
+		}
+	}
+}
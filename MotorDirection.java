@@ -0,0 +1,10 @@
+/**
+ * Possible states of a motor's rotation
+ *
+ * @author Jack Deadman
+ * @author Joshua O'Leary
+ */
+
+public enum MotorDirection {
+	FORWARD, BACKWARD, STOPPED;
+}
@@ -0,0 +1,142 @@
+import java.lang.management.ManagementFactory;
+
+/**
+ * Benchmark harness for the navigation control loop, run against the simulator so results are repeatable.
+ * Reports cycles per second, time per cycle and bytes allocated per cycle for each benchmark.
+ *
+ * @author Jack Deadman
+ * @author Joshua O'Leary
+ */
+
+public class NavigationBenchmark {
+	// Number of rounds run before measuring, to let the JIT compiler warm up
+	private static final int WARMUP_ROUNDS = 5;
+	private static final int MEASURED_ROUNDS = 10;
+
+	// Cycles per round for the single-cycle benchmarks
+	private static final int CYCLES_PER_ROUND = 200000;
+
+	// Full navigation runs per round
+	private static final int RUNS_PER_ROUND = 20;
+
+	// Snapshots that make moveAlongLine() steer left, right and go forward in turn
+	private static final SensorSnapshot[] SNAPSHOTS = {
+		new SensorSnapshot(450, 640, 255, true, false, true, false, 0, 0),
+		new SensorSnapshot(600, 500, 255, false, true, false, true, 0, 1),
+		new SensorSnapshot(600, 640, 255, false, false, false, false, 0, 2),
+		new SensorSnapshot(450, 500, 30, true, true, true, true, 0, 3)
+	};
+
+	private static final com.sun.management.ThreadMXBean THREADS =
+			(com.sun.management.ThreadMXBean)ManagementFactory.getThreadMXBean();
+
+	// Prevents the JIT compiler from removing benchmarked code whose result is unused
+	private static int sink;
+
+	/**
+	 * A piece of code to be benchmarked
+	 */
+	private interface Benchmark {
+		/**
+		 * Runs one round of the benchmark
+		 * @return int Number of control cycles run
+		 */
+		int round() throws InterruptedException;
+	}
+
+	/**
+	 * Runs a benchmark and prints its results
+	 * @param name String Name of benchmark
+	 * @param benchmark Benchmark Benchmark to run
+	 */
+	private static void measure(String name, Benchmark benchmark) throws InterruptedException {
+		for (int i = 0; i < WARMUP_ROUNDS; i++) {
+			benchmark.round();
+		}
+
+		long threadId = Thread.currentThread().getId();
+		long cycles = 0;
+		long startBytes = THREADS.getThreadAllocatedBytes(threadId);
+		long startTime = System.nanoTime();
+		for (int i = 0; i < MEASURED_ROUNDS; i++) {
+			cycles += benchmark.round();
+		}
+		long time = System.nanoTime() - startTime;
+		long bytes = THREADS.getThreadAllocatedBytes(threadId) - startBytes;
+
+		System.out.printf("%-16s %12.0f cycles/s %10.1f ns/cycle %8.1f B/cycle %10.1f MB/s%n", name,
+				cycles * 1e9 / time, (double)time / cycles, (double)bytes / cycles, bytes * 1e3 / time);
+	}
+
+	/**
+	 * Sets up a simulated robot with no link latency, so only the control code itself is measured
+	 * @return RobotControl Simulated robot
+	 */
+	private static RobotControl setUpSimulator() {
+		SimulatedBackend backend = new SimulatedBackend(SimulatedCourse.createDefault(), 0);
+		backend.setLinkLatency(0);
+		RobotControl control = new RobotControl(backend);
+		control.initialise();
+		control.setBaseSpeed(150);
+		return control;
+	}
+
+	/**
+	 * Runs the program once in the simulator, without printing the latency summary
+	 * @param direction Direction Direction of robot's first turn
+	 * @param seed long Seed for sensor noise
+	 * @return long Number of control cycles run
+	 */
+	private static long simulate(Direction direction, long seed) throws InterruptedException {
+		RobotControl control = new RobotControl(Simulator.createBackend(seed, 5));
+		control.setPrintMetricsOnClose(false);
+		Simulator.simulate(control, direction, new String[0]);
+		return control.getReadingsTaken();
+	}
+
+	public static void main(String[] args) throws InterruptedException {
+		final RobotControl control = setUpSimulator();
+		final Robot robot = new Robot(control);
+
+		measure("moveAlongLine", new Benchmark() {
+			public int round() throws InterruptedException {
+				for (int i = 0; i < CYCLES_PER_ROUND; i++) {
+					robot.moveAlongLine(SNAPSHOTS[i % SNAPSHOTS.length]);
+				}
+				return CYCLES_PER_ROUND;
+			}
+		});
+
+		measure("reachedSpot", new Benchmark() {
+			public int round() {
+				for (int i = 0; i < CYCLES_PER_ROUND; i++) {
+					sink += robot.reachedSpot(SNAPSHOTS[i % SNAPSHOTS.length]) ? 1 : 0;
+				}
+				return CYCLES_PER_ROUND;
+			}
+		});
+
+		measure("readSensors", new Benchmark() {
+			public int round() {
+				for (int i = 0; i < CYCLES_PER_ROUND; i++) {
+					sink += control.readSensors().getDistance();
+				}
+				return CYCLES_PER_ROUND;
+			}
+		});
+
+		// Whole simulated runs (calibration, line following, detours and finding the spot), each cycle being
+		// one set of sensor readings
+		measure("fullRun", new Benchmark() {
+			public int round() throws InterruptedException {
+				long cycles = 0;
+				for (int i = 0; i < RUNS_PER_ROUND; i++) {
+					cycles += simulate(i % 2 == 0 ? Direction.LEFT : Direction.RIGHT, i);
+				}
+				return (int)cycles;
+			}
+		});
+
+		System.out.println("(sink " + sink + ")");
+	}
+}
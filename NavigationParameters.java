@@ -0,0 +1,98 @@
+/**
+ * Immutable set of the tuning values used by Robot to navigate, so they can be varied (for example by
+ * ParameterTuner) without changing the code
+ *
+ * @author Jack Deadman
+ * @author Joshua O'Leary
+ */
+
+public class NavigationParameters {
+	// Values tuned by hand on the physical course
+	public static final NavigationParameters DEFAULT = new NavigationParameters(150, 2.0, 4.0, 14, 30, 14);
+
+	private final int baseSpeed;
+	private final double speedFactor;
+	private final double lineUpSpeedFactor;
+	private final int obstacleRange;
+	private final int cyclePeriod;
+	private final int finalApproachDistance;
+
+	/**
+	 * Constructs a new NavigationParameters
+	 * @param baseSpeed int Base speed for all movement (degrees per second)
+	 * @param speedFactor double Ratio between the wheel speeds when turning to follow the line
+	 * @param lineUpSpeedFactor double Ratio between the wheel speeds when turning onto the line at the start
+	 * (high enough that the robot turns tightly enough to move onto the line correctly)
+	 * @param obstacleRange int Maximum distance of an obstacle detected before the robot turns (in cm)
+	 * @param cyclePeriod int Period of the control loop (in milliseconds)
+	 * @param finalApproachDistance int Distance driven forward after finding the spot, to move onto it (in cm)
+	 */
+	public NavigationParameters(int baseSpeed, double speedFactor, double lineUpSpeedFactor, int obstacleRange,
+			int cyclePeriod, int finalApproachDistance) {
+		if (baseSpeed <= 0 || speedFactor <= 0 || lineUpSpeedFactor <= 0 || cyclePeriod <= 0
+				|| finalApproachDistance < 0) {
+			throw new IllegalArgumentException("Invalid navigation parameters: " + baseSpeed + ", " + speedFactor + ", "
+					+ lineUpSpeedFactor + ", " + obstacleRange + ", " + cyclePeriod + ", " + finalApproachDistance);
+		}
+		this.baseSpeed = baseSpeed;
+		this.speedFactor = speedFactor;
+		this.lineUpSpeedFactor = lineUpSpeedFactor;
+		this.obstacleRange = obstacleRange;
+		this.cyclePeriod = cyclePeriod;
+		this.finalApproachDistance = finalApproachDistance;
+	}
+
+	/**
+	 * Returns the base speed for all movement
+	 * @return int Base speed (degrees per second)
+	 */
+	public int getBaseSpeed() {
+		return baseSpeed;
+	}
+
+	/**
+	 * Returns the ratio between the wheel speeds when turning to follow the line
+	 * @return double Speed factor
+	 */
+	public double getSpeedFactor() {
+		return speedFactor;
+	}
+
+	/**
+	 * Returns the ratio between the wheel speeds when turning onto the line at the start
+	 * @return double Speed factor
+	 */
+	public double getLineUpSpeedFactor() {
+		return lineUpSpeedFactor;
+	}
+
+	/**
+	 * Returns the maximum distance of an obstacle detected before the robot turns
+	 * @return int Range (in cm)
+	 */
+	public int getObstacleRange() {
+		return obstacleRange;
+	}
+
+	/**
+	 * Returns the period of the control loop
+	 * @return int Period (in milliseconds)
+	 */
+	public int getCyclePeriod() {
+		return cyclePeriod;
+	}
+
+	/**
+	 * Returns the distance driven forward after finding the spot
+	 * @return int Distance (in cm)
+	 */
+	public int getFinalApproachDistance() {
+		return finalApproachDistance;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("speed=%d factor=%.2f lineUp=%.2f obstacle=%d period=%d approach=%d", baseSpeed,
+				speedFactor, lineUpSpeedFactor, obstacleRange, cyclePeriod, finalApproachDistance);
+	}
+}
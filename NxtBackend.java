@@ -0,0 +1,256 @@
+import icommand.nxt.*;
+import icommand.nxt.comm.NXTCommand;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Backend for our NXT robot, connected with the icommand library. icommand keeps a single static connection
+ * which cannot carry two commands at once, while the sampler, the motor command writer, the watchdog, the
+ * health check and sensor set-up all use it from their own threads, so every call to icommand is made
+ * holding one lock. Commands are only verified (waiting for the robot's acknowledgement) when asked for.
+ *
+ * @author Jack Deadman
+ * @author Joshua O'Leary
+ */
+
+public class NxtBackend implements RobotBackend {
+	// Held for every call to icommand (static, as icommand's connection is). Fair, so a thread sending
+	// commands in a tight loop cannot hold up the others
+	private static final ReentrantLock LINK = new ReentrantLock(true);
+
+	// Motors, in the order of the motor indexes
+	private static final Motor[] MOTORS = {Motor.C, Motor.B};
+
+	// SensorPort for Light Sensor
+	private static final SensorPort L_SENSOR_PORT_LEFT = SensorPort.S2;
+	private static final SensorPort L_SENSOR_PORT_RIGHT = SensorPort.S1;
+
+	// SensorPort for Ultrasonic Sensor
+	private static final SensorPort U_SENSOR_PORT = SensorPort.S4;
+
+	// Sensor objects, each set up the first time it is read (or in the background by prepareSensors()), as
+	// setting up a sensor's mode takes several round-trips to the robot that a run which only stops the robot
+	// does not need
+	private volatile FutureTask<LightSensor> lightSensorLeft;
+	private volatile FutureTask<LightSensor> lightSensorRight;
+	private volatile FutureTask<UltrasonicSensor> objectSensor;
+
+	public void open() {
+		LINK.lock();
+		try {
+			NXTCommand.open();
+			// Only commands which ask for it are verified (see setMotorDirection())
+			NXTCommand.setVerify(false);
+		}
+		finally {
+			LINK.unlock();
+		}
+
+		// Each sensor's set-up takes the lock for itself, so other calls can be made between set-ups
+		lightSensorLeft = new FutureTask<LightSensor>(new Callable<LightSensor>() {
+			public LightSensor call() {
+				LINK.lock();
+				try {
+					return new LightSensor(L_SENSOR_PORT_LEFT);
+				}
+				finally {
+					LINK.unlock();
+				}
+			}
+		});
+		lightSensorRight = new FutureTask<LightSensor>(new Callable<LightSensor>() {
+			public LightSensor call() {
+				LINK.lock();
+				try {
+					return new LightSensor(L_SENSOR_PORT_RIGHT);
+				}
+				finally {
+					LINK.unlock();
+				}
+			}
+		});
+		objectSensor = new FutureTask<UltrasonicSensor>(new Callable<UltrasonicSensor>() {
+			public UltrasonicSensor call() {
+				LINK.lock();
+				try {
+					UltrasonicSensor sensor = new UltrasonicSensor(U_SENSOR_PORT);
+					// The first reading after switching the sensor on is slow, so it is taken while warming up
+					sensor.getDistance();
+					return sensor;
+				}
+				finally {
+					LINK.unlock();
+				}
+			}
+		});
+	}
+
+	public void prepareSensors() {
+		// Each sensor is set up on its own thread, so waiting for one sensor's acknowledgements overlaps with
+		// setting up the others
+		startSetUp(lightSensorLeft, "LightSensorLeft");
+		startSetUp(lightSensorRight, "LightSensorRight");
+		startSetUp(objectSensor, "UltrasonicSensor");
+	}
+
+	private static void startSetUp(FutureTask<?> sensor, String name) {
+		Thread thread = new Thread(sensor, "SetUp" + name);
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	/**
+	 * Returns a sensor, setting it up on the calling thread if nothing has started setting it up yet, or
+	 * waiting for it to be set up otherwise (so the lock must not be held, as the set-up may be waiting for it
+	 * on another thread)
+	 * @param sensor FutureTask Task setting up the sensor
+	 * @return T Sensor, ready to read
+	 */
+	private static <T> T sensor(FutureTask<T> sensor) {
+		// Does nothing if the sensor is already set up or being set up
+		sensor.run();
+		// Setting up is short, so it is waited for even if interrupted (a failure here would be taken for a
+		// dropped connection); the interrupt is kept for the caller's next wait
+		boolean interrupted = false;
+		try {
+			while (true) {
+				try {
+					return sensor.get();
+				}
+				catch (InterruptedException e) {
+					interrupted = true;
+				}
+			}
+		}
+		catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			throw cause instanceof RuntimeException ? (RuntimeException)cause
+					: new IllegalStateException("Could not set up sensor", cause);
+		}
+		finally {
+			if (interrupted) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	public void close() {
+		LINK.lock();
+		try {
+			NXTCommand.close();
+		}
+		finally {
+			LINK.unlock();
+		}
+	}
+
+	public boolean isRealTime() {
+		return true;
+	}
+
+	public int getLightValueLeft() {
+		LightSensor sensor = sensor(lightSensorLeft);
+		LINK.lock();
+		try {
+			return sensor.getLightValue();
+		}
+		finally {
+			LINK.unlock();
+		}
+	}
+
+	public int getLightValueRight() {
+		LightSensor sensor = sensor(lightSensorRight);
+		LINK.lock();
+		try {
+			return sensor.getLightValue();
+		}
+		finally {
+			LINK.unlock();
+		}
+	}
+
+	public int getDistance() {
+		UltrasonicSensor sensor = sensor(objectSensor);
+		LINK.lock();
+		try {
+			return sensor.getDistance();
+		}
+		finally {
+			LINK.unlock();
+		}
+	}
+
+	public int getTachoCount(int motor) {
+		LINK.lock();
+		try {
+			return MOTORS[motor].getTachoCount();
+		}
+		finally {
+			LINK.unlock();
+		}
+	}
+
+	public void setMotorSpeed(int motor, int speed) {
+		LINK.lock();
+		try {
+			MOTORS[motor].setSpeed(speed);
+		}
+		finally {
+			LINK.unlock();
+		}
+	}
+
+	public void setMotorDirection(int motor, MotorDirection direction, boolean verify) {
+		LINK.lock();
+		try {
+			// icommand's verify setting applies to every command, so it is only switched on for this one (under
+			// the lock, so no other thread's command is verified meanwhile)
+			if (verify) {
+				NXTCommand.setVerify(true);
+			}
+			try {
+				switch (direction) {
+					case FORWARD:
+						MOTORS[motor].forward();
+						break;
+					case BACKWARD:
+						MOTORS[motor].backward();
+						break;
+					default:
+						MOTORS[motor].stop();
+						break;
+				}
+			}
+			finally {
+				if (verify) {
+					NXTCommand.setVerify(false);
+				}
+			}
+		}
+		finally {
+			LINK.unlock();
+		}
+	}
+
+	public void playTone(int hz, int duration) {
+		LINK.lock();
+		try {
+			Sound.playTone(hz, duration);
+		}
+		finally {
+			LINK.unlock();
+		}
+	}
+
+	public long nanoTime() {
+		return System.nanoTime();
+	}
+
+	public void sleep(long millis) throws InterruptedException {
+		Thread.sleep(millis);
+	}
+}
@@ -0,0 +1,139 @@
+/**
+ * Estimates the robot's position, heading and distance travelled from the motors' tachometer counts (dead
+ * reckoning), so moves can be measured by how far the wheels have actually turned rather than by time
+ *
+ * @author Jack Deadman
+ * @author Joshua O'Leary
+ */
+
+public class Odometry {
+	// Robot dimensions (in cm), measured from our robot
+	public static final double WHEEL_DIAMETER = 5.6;
+	public static final double WHEEL_BASE = 12.0;
+
+	// Tachometer counts at the last update (in degrees)
+	private int tachoCountLeft;
+	private int tachoCountRight;
+	private boolean started;
+
+	// Position relative to where the first update was made (in cm), facing along the x axis
+	private double x;
+	private double y;
+	private double heading;
+	private double distance;
+
+	/**
+	 * Converts a distance along the ground to the angle a wheel turns to cover it
+	 * @param centimetres double Distance (in cm)
+	 * @return double Angle (in wheel degrees)
+	 */
+	public static double toWheelDegrees(double centimetres) {
+		return centimetres * 360 / (Math.PI * WHEEL_DIAMETER);
+	}
+
+	/**
+	 * Converts the angle a wheel turns to the distance it covers along the ground
+	 * @param wheelDegrees double Angle (in wheel degrees)
+	 * @return double Distance (in cm)
+	 */
+	public static double toCentimetres(double wheelDegrees) {
+		return wheelDegrees * Math.PI * WHEEL_DIAMETER / 360;
+	}
+
+	/**
+	 * Converts a rotation of the robot on the spot to the angle each wheel turns (in opposite directions)
+	 * @param robotDegrees double Rotation of the robot (in degrees)
+	 * @return double Angle turned by each wheel (in wheel degrees)
+	 */
+	public static double rotationToWheelDegrees(double robotDegrees) {
+		return robotDegrees * WHEEL_BASE / WHEEL_DIAMETER;
+	}
+
+	/**
+	 * Moves the estimate on by the wheels' travel since the last update
+	 * @param left int Tachometer count of the left motor (in degrees)
+	 * @param right int Tachometer count of the right motor (in degrees)
+	 */
+	public synchronized void update(int left, int right) {
+		if (started) {
+			double travelLeft = toCentimetres(left - tachoCountLeft);
+			double travelRight = toCentimetres(right - tachoCountRight);
+			double travel = (travelLeft + travelRight) / 2;
+			double turn = (travelRight - travelLeft) / WHEEL_BASE;
+
+			// Moving along the mean heading over the update is accurate for arcs as well as straight lines
+			x += travel * Math.cos(heading + turn / 2);
+			y += travel * Math.sin(heading + turn / 2);
+			heading += turn;
+			distance += Math.abs(travel);
+		}
+		tachoCountLeft = left;
+		tachoCountRight = right;
+		started = true;
+	}
+
+	/**
+	 * Makes the robot's current position the origin, facing along the x axis
+	 */
+	public synchronized void reset() {
+		started = false;
+		x = 0;
+		y = 0;
+		heading = 0;
+		distance = 0;
+	}
+
+	/**
+	 * Returns the tachometer count of the left motor at the last update
+	 * @return int Count (in degrees)
+	 */
+	public synchronized int getTachoCountLeft() {
+		return tachoCountLeft;
+	}
+
+	/**
+	 * Returns the tachometer count of the right motor at the last update
+	 * @return int Count (in degrees)
+	 */
+	public synchronized int getTachoCountRight() {
+		return tachoCountRight;
+	}
+
+	/**
+	 * Returns the estimated distance along the x axis from the origin
+	 * @return double X coordinate (in cm)
+	 */
+	public synchronized double getX() {
+		return x;
+	}
+
+	/**
+	 * Returns the estimated distance along the y axis from the origin (to the left of the starting heading)
+	 * @return double Y coordinate (in cm)
+	 */
+	public synchronized double getY() {
+		return y;
+	}
+
+	/**
+	 * Returns the estimated heading relative to the starting heading
+	 * @return double Heading (in degrees, anticlockwise)
+	 */
+	public synchronized double getHeading() {
+		return Math.toDegrees(heading);
+	}
+
+	/**
+	 * Returns the total distance travelled, forwards or backwards
+	 * @return double Distance (in cm)
+	 */
+	public synchronized double getDistance() {
+		return distance;
+	}
+
+	@Override
+	public synchronized String toString() {
+		return String.format("x %.1f cm, y %.1f cm, heading %.0f deg, travelled %.1f cm", x, y, getHeading(),
+				distance);
+	}
+}
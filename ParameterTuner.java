@@ -0,0 +1,272 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Tunes the navigation parameters by running full navigations in the simulator for a grid or a random
+ * sample of parameter values, in parallel on a fork-join pool using every core, and ranking the values by
+ * failure rate and then by time taken to complete a run
+ *
+ * @author Jack Deadman
+ * @author Joshua O'Leary
+ */
+
+public class ParameterTuner {
+	// Values tried for each parameter in a grid search
+	private static final int[] BASE_SPEEDS = {120, 150, 180};
+	private static final double[] SPEED_FACTORS = {1.5, 2.0, 3.0};
+	private static final double[] LINE_UP_SPEED_FACTORS = {3.0, 4.0, 5.0};
+	private static final int[] OBSTACLE_RANGES = {12, 14, 16};
+	private static final int[] CYCLE_PERIODS = {20, 30};
+	private static final int[] FINAL_APPROACH_DISTANCES = {12, 14, 16};
+
+	// Number of best configurations listed
+	private static final int CONFIGURATIONS_SHOWN = 10;
+
+	private final NavigationParameters[] configurations;
+	private final int runsPerConfiguration;
+	private final int linkLatency;
+	private final String[] flags;
+
+	// Results for each configuration (updated by every worker thread)
+	private final AtomicIntegerArray successes;
+	private final AtomicLongArray successTime;
+
+	/**
+	 * Runs a range of the runs in the sweep, splitting it in half until each task is a single run
+	 */
+	private class SweepTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+
+		private final int from;
+		private final int to;
+
+		private SweepTask(int from, int to) {
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute() {
+			if (to - from == 1) {
+				simulate(from);
+			}
+			else {
+				int middle = (from + to) >>> 1;
+				invokeAll(new SweepTask(from, middle), new SweepTask(middle, to));
+			}
+		}
+	}
+
+	/**
+	 * Constructs a new ParameterTuner
+	 * @param configurations List&lt;NavigationParameters&gt; Parameter values to try
+	 * @param seeds int Number of seeds each configuration is run with (in both start directions)
+	 * @param linkLatency int Time added for each sensor read or motor command (in milliseconds)
+	 * @param flags String[] Robot flags for every run (not -l: runs are made in parallel and in no particular
+	 * order, so cannot learn the course from one another; nor -t, as every run would record to the same file)
+	 */
+	public ParameterTuner(List<NavigationParameters> configurations, int seeds, int linkLatency, String[] flags) {
+		if (Arrays.asList(flags).contains("-l")) {
+			throw new IllegalArgumentException("Course learning (-l) cannot be used while tuning");
+		}
+		if (Arrays.asList(flags).contains("-t")) {
+			throw new IllegalArgumentException("Telemetry (-t) cannot be used while tuning");
+		}
+		this.configurations = configurations.toArray(new NavigationParameters[configurations.size()]);
+		this.runsPerConfiguration = seeds * 2;
+		this.linkLatency = linkLatency;
+		this.flags = flags.clone();
+		successes = new AtomicIntegerArray(this.configurations.length);
+		successTime = new AtomicLongArray(this.configurations.length);
+	}
+
+	/**
+	 * Creates every combination of the grid search values
+	 * @return List&lt;NavigationParameters&gt; Configurations to try
+	 */
+	public static List<NavigationParameters> grid() {
+		List<NavigationParameters> configurations = new ArrayList<NavigationParameters>();
+		for (int baseSpeed : BASE_SPEEDS) {
+			for (double speedFactor : SPEED_FACTORS) {
+				for (double lineUpSpeedFactor : LINE_UP_SPEED_FACTORS) {
+					for (int obstacleRange : OBSTACLE_RANGES) {
+						for (int cyclePeriod : CYCLE_PERIODS) {
+							for (int finalApproachDistance : FINAL_APPROACH_DISTANCES) {
+								configurations.add(new NavigationParameters(baseSpeed, speedFactor, lineUpSpeedFactor,
+										obstacleRange, cyclePeriod, finalApproachDistance));
+							}
+						}
+					}
+				}
+			}
+		}
+		return configurations;
+	}
+
+	/**
+	 * Creates configurations with each value picked at random between the lowest and highest grid search values
+	 * @param count int Number of configurations
+	 * @param seed long Seed for picking the values
+	 * @return List&lt;NavigationParameters&gt; Configurations to try
+	 */
+	public static List<NavigationParameters> random(int count, long seed) {
+		Random random = new Random(seed);
+		List<NavigationParameters> configurations = new ArrayList<NavigationParameters>();
+		for (int i = 0; i < count; i++) {
+			configurations.add(new NavigationParameters(
+					(int)Math.round(pick(random, BASE_SPEEDS[0], BASE_SPEEDS[BASE_SPEEDS.length - 1])),
+					pick(random, SPEED_FACTORS[0], SPEED_FACTORS[SPEED_FACTORS.length - 1]),
+					pick(random, LINE_UP_SPEED_FACTORS[0], LINE_UP_SPEED_FACTORS[LINE_UP_SPEED_FACTORS.length - 1]),
+					(int)Math.round(pick(random, OBSTACLE_RANGES[0], OBSTACLE_RANGES[OBSTACLE_RANGES.length - 1])),
+					(int)Math.round(pick(random, CYCLE_PERIODS[0], CYCLE_PERIODS[CYCLE_PERIODS.length - 1])),
+					(int)Math.round(pick(random, FINAL_APPROACH_DISTANCES[0],
+							FINAL_APPROACH_DISTANCES[FINAL_APPROACH_DISTANCES.length - 1]))));
+		}
+		return configurations;
+	}
+
+	/**
+	 * Picks a value uniformly at random in a range
+	 * @param random Random Source of random numbers
+	 * @param min double Lowest value
+	 * @param max double Highest value
+	 * @return double Random value
+	 */
+	private static double pick(Random random, double min, double max) {
+		return min + random.nextDouble() * (max - min);
+	}
+
+	/**
+	 * Makes one run of the sweep: each configuration's runs alternate start direction over increasing seeds
+	 * @param run int Index of the run
+	 */
+	private void simulate(int run) {
+		int configuration = run / runsPerConfiguration;
+		int index = run % runsPerConfiguration;
+
+		SimulatedBackend backend = Simulator.createBackend(index / 2, linkLatency);
+		RobotControl control = new RobotControl(backend);
+		control.setPrintMetricsOnClose(false);
+		try {
+			Simulator.simulate(control, index % 2 == 0 ? Direction.LEFT : Direction.RIGHT,
+					configurations[configuration], flags);
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return;
+		}
+
+		if (backend.isOnSpot()) {
+			successes.incrementAndGet(configuration);
+			successTime.addAndGet(configuration, backend.getElapsedMillis());
+		}
+	}
+
+	/**
+	 * Runs every configuration on a pool with a worker for each core
+	 */
+	public void run() {
+		ForkJoinPool pool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+		try {
+			pool.invoke(new SweepTask(0, configurations.length * runsPerConfiguration));
+		}
+		finally {
+			pool.shutdown();
+		}
+	}
+
+	/**
+	 * Returns the proportion of a configuration's runs in which the robot did not reach the spot
+	 * @param configuration int Index of configuration
+	 * @return double Failure rate between 0 and 1
+	 */
+	public double getFailureRate(int configuration) {
+		return 1 - (double)successes.get(configuration) / runsPerConfiguration;
+	}
+
+	/**
+	 * Returns the mean time of a configuration's successful runs
+	 * @param configuration int Index of configuration
+	 * @return double Mean simulated time (in milliseconds), or infinity if no runs succeeded
+	 */
+	public double getMeanTime(int configuration) {
+		int count = successes.get(configuration);
+		return count == 0 ? Double.POSITIVE_INFINITY : (double)successTime.get(configuration) / count;
+	}
+
+	/**
+	 * Orders the configurations from best to worst: fewest failures first, then fastest
+	 * @return List&lt;Integer&gt; Indexes of configurations in order
+	 */
+	public List<Integer> rank() {
+		List<Integer> ranking = new ArrayList<Integer>();
+		for (int i = 0; i < configurations.length; i++) {
+			ranking.add(i);
+		}
+		Collections.sort(ranking, new Comparator<Integer>() {
+			public int compare(Integer a, Integer b) {
+				int failures = Double.compare(getFailureRate(a), getFailureRate(b));
+				return failures != 0 ? failures : Double.compare(getMeanTime(a), getMeanTime(b));
+			}
+		});
+		return ranking;
+	}
+
+	/**
+	 * Returns a configuration that was tried
+	 * @param configuration int Index of configuration
+	 * @return NavigationParameters Parameter values
+	 */
+	public NavigationParameters getConfiguration(int configuration) {
+		return configurations[configuration];
+	}
+
+	public static void main(String[] args) {
+		// Usage: ParameterTuner grid [seeds] [link latency] [Robot flags...]
+		//        ParameterTuner random <configurations> [seeds] [link latency] [Robot flags...]
+		boolean random = args.length > 0 && args[0].equals("random");
+		int next = random ? 2 : Math.min(1, args.length);
+		List<NavigationParameters> configurations = random ? random(Integer.parseInt(args[1]), 0) : grid();
+		configurations.add(0, NavigationParameters.DEFAULT);
+
+		int seeds = args.length > next ? Integer.parseInt(args[next]) : 4;
+		int linkLatency = args.length > next + 1 ? Integer.parseInt(args[next + 1]) : 5;
+		String[] flags = Arrays.copyOfRange(args, Math.min(next + 2, args.length), args.length);
+
+		ParameterTuner tuner;
+		try {
+			tuner = new ParameterTuner(configurations, seeds, linkLatency, flags);
+		}
+		catch (IllegalArgumentException e) {
+			System.out.println(e.getMessage());
+			return;
+		}
+		int runs = configurations.size() * seeds * 2;
+		System.out.println("Running " + runs + " simulations of " + configurations.size() + " configurations on "
+				+ Runtime.getRuntime().availableProcessors() + " cores...");
+
+		long startTime = System.nanoTime();
+		tuner.run();
+		double time = (System.nanoTime() - startTime) / 1e9;
+		System.out.printf("Finished in %.1f s (%.0f runs/s)%n", time, runs / time);
+
+		List<Integer> ranking = tuner.rank();
+		for (int i = 0; i < Math.min(CONFIGURATIONS_SHOWN, ranking.size()); i++) {
+			int configuration = ranking.get(i);
+			System.out.printf("%3d. failures %5.1f%%  mean time %6.0f ms  %s%n", i + 1,
+					tuner.getFailureRate(configuration) * 100, tuner.getMeanTime(configuration),
+					tuner.getConfiguration(configuration));
+		}
+		// The defaults are always tried first, for comparison
+		System.out.printf("Default (rank %d): failures %5.1f%%  mean time %6.0f ms%n", ranking.indexOf(0) + 1,
+				tuner.getFailureRate(0) * 100, tuner.getMeanTime(0));
+	}
+}
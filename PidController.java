@@ -0,0 +1,65 @@
+/**
+ * Proportional-integral-derivative controller, used to turn an error (e.g. how far the line is from
+ * the centre of the robot) into a correction
+ *
+ * @author Jack Deadman
+ * @author Joshua O'Leary
+ */
+
+public class PidController {
+	private final double kp;
+	private final double ki;
+	private final double kd;
+
+	// Largest magnitude of output, and of the integral term, preventing wind-up
+	private final double outputLimit;
+
+	private double integral;
+	private double previousError;
+	private boolean hasPreviousError;
+
+	/**
+	 * Constructs a new PidController
+	 * @param kp double Proportional gain
+	 * @param ki double Integral gain
+	 * @param kd double Derivative gain
+	 * @param outputLimit double Largest magnitude of output
+	 */
+	public PidController(double kp, double ki, double kd, double outputLimit) {
+		this.kp = kp;
+		this.ki = ki;
+		this.kd = kd;
+		this.outputLimit = outputLimit;
+	}
+
+	/**
+	 * Clears the controller's history (integral and previous error), e.g. when starting to follow a line again
+	 */
+	public void reset() {
+		integral = 0;
+		previousError = 0;
+		hasPreviousError = false;
+	}
+
+	/**
+	 * Calculates the correction for a new error
+	 * @param error double Current error
+	 * @param dt double Time since the previous update (in seconds)
+	 * @return double Correction, between -outputLimit and outputLimit
+	 */
+	public double update(double error, double dt) {
+		if (ki != 0) {
+			integral = clamp(integral + error * dt, outputLimit / ki);
+		}
+		double derivative = hasPreviousError && dt > 0 ? (error - previousError) / dt : 0;
+		previousError = error;
+		hasPreviousError = true;
+
+		return clamp(kp * error + ki * integral + kd * derivative, outputLimit);
+	}
+
+	private static double clamp(double value, double limit) {
+		limit = Math.abs(limit);
+		return Math.max(-limit, Math.min(limit, value));
+	}
+}
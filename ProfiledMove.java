@@ -0,0 +1,112 @@
+/**
+ * Behaviour which turns each wheel through a given angle, measured by the motors' tachometers, then stops
+ * the robot. Speed follows a trapezoidal profile: it ramps up from the speed the robot was already moving
+ * at, cruises, and ramps down to a crawl before the target, so the wheels neither slip nor overshoot.
+ *
+ * @author Jack Deadman
+ * @author Joshua O'Leary
+ */
+
+public class ProfiledMove implements Behaviour {
+	// Rate the wheels' speed changes (degrees per second per second), gentle enough that they do not slip
+	private static final double ACCELERATION = 800;
+
+	// Slowest speed driven at, which the motors can hold against friction (degrees per second)
+	private static final int MIN_SPEED = 40;
+
+	// Distance from the target at which the move has finished (in wheel degrees)
+	private static final int TOLERANCE = 3;
+
+	// Time without the wheels turning after which the move is abandoned, as a wheel must be blocked
+	// (in nanoseconds)
+	private static final long STALL_TIMEOUT = 1000000000L;
+
+	private final RobotControl control;
+	private final double targetLeft;
+	private final double targetRight;
+	private final double distance;
+	private final int speed;
+
+	// Tachometer counts and speed at the first step, once the move has started
+	private int originLeft;
+	private int originRight;
+	private double startSpeed;
+	private boolean started;
+
+	// Furthest the wheel with further to go has turned, and when it got there
+	private double progress;
+	private long progressTime;
+
+	/**
+	 * Constructs a new ProfiledMove
+	 * @param control RobotControl Robot to drive
+	 * @param targetLeft double Angle for the left wheel to turn (in wheel degrees, negative to go backward)
+	 * @param targetRight double Angle for the right wheel to turn (in wheel degrees, negative to go backward)
+	 * @param speed int Top speed of the wheel with further to go (degrees per second)
+	 */
+	public ProfiledMove(RobotControl control, double targetLeft, double targetRight, int speed) {
+		this.control = control;
+		this.targetLeft = targetLeft;
+		this.targetRight = targetRight;
+		this.distance = Math.max(Math.abs(targetLeft), Math.abs(targetRight));
+		this.speed = Math.max(speed, MIN_SPEED);
+	}
+
+	public boolean usesMotors() {
+		return true;
+	}
+
+	public boolean step(long now) {
+		Odometry odometry = control.updateOdometry();
+		if (!started) {
+			originLeft = odometry.getTachoCountLeft();
+			originRight = odometry.getTachoCountRight();
+			startSpeed = Math.min(currentSpeed(), speed);
+			progressTime = now;
+			started = true;
+		}
+
+		// Progress is measured by the wheel with further to go, as the other is driven in proportion to it
+		double travelled = Math.abs(targetLeft) >= Math.abs(targetRight)
+				? Math.abs(odometry.getTachoCountLeft() - originLeft)
+				: Math.abs(odometry.getTachoCountRight() - originRight);
+		double remaining = distance - travelled;
+		if (travelled > progress) {
+			progress = travelled;
+			progressTime = now;
+		}
+		if (remaining <= TOLERANCE || now - progressTime >= STALL_TIMEOUT) {
+			control.stop();
+			return false;
+		}
+
+		double accelerating = Math.sqrt(startSpeed * startSpeed + 2 * ACCELERATION * travelled);
+		double decelerating = Math.sqrt(MIN_SPEED * MIN_SPEED + 2 * ACCELERATION * remaining);
+		double profile = Math.max(MIN_SPEED, Math.min(speed, Math.min(accelerating, decelerating)));
+		control.setWheelSpeeds((int)Math.round(profile * targetLeft / distance),
+				(int)Math.round(profile * targetRight / distance));
+		return true;
+	}
+
+	/**
+	 * Returns the speed the robot was already moving at in the direction of the move, so the move carries on
+	 * smoothly rather than starting from rest
+	 * @return double Speed of the slower wheel (degrees per second), or 0 if either wheel is stopped or
+	 * turning the other way
+	 */
+	private double currentSpeed() {
+		double left = signedSpeed(control.getLastCommandLeft());
+		double right = signedSpeed(control.getLastCommandRight());
+		if (left * targetLeft <= 0 || right * targetRight <= 0) {
+			return 0;
+		}
+		return Math.min(Math.abs(left), Math.abs(right));
+	}
+
+	private static double signedSpeed(MotorCommand command) {
+		if (command == null || command.getDirection() == MotorDirection.STOPPED) {
+			return 0;
+		}
+		return command.getDirection() == MotorDirection.FORWARD ? command.getSpeed() : -command.getSpeed();
+	}
+}
@@ -0,0 +1,109 @@
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Replays a recorded run (from the -t flag) through the robot's decision logic and compares the motor
+ * commands it gives against the ones recorded, for reproducing problems and testing changes to the
+ * decision logic without the robot
+ *
+ * @author Jack Deadman
+ * @author Joshua O'Leary
+ */
+
+public class Replay {
+	// Number of differences listed individually
+	private static final int MAX_DIFFERENCES_SHOWN = 10;
+
+	public static void main(String[] args) throws IOException, InterruptedException {
+		// Usage: Replay <telemetry file> [Robot flags used for the recorded run...]
+		if (args.length < 1) {
+			System.out.println("Usage: Replay <telemetry file> [flags]");
+			return;
+		}
+		int differences = replay(new File(args[0]), Arrays.copyOfRange(args, 1, args.length));
+		System.out.println("Differences in motor commands: " + differences);
+	}
+
+	/**
+	 * Replays a recorded run, printing how quickly it was replayed and the first differences from the recording
+	 * @param input File Telemetry file of the recorded run
+	 * @param flags String[] Robot flags used for the recorded run
+	 * @return int Number of control cycles whose motor commands differ from the recording
+	 */
+	public static int replay(File input, String[] flags) throws IOException, InterruptedException {
+		TelemetryReader recording = new TelemetryReader(input);
+		File output = File.createTempFile("replay", ".bin");
+		output.deleteOnExit();
+
+		ReplayBackend backend = new ReplayBackend(recording);
+		RobotControl control = new RobotControl(backend);
+		control.initialise();
+		Robot robot = new Robot(control);
+		robot.setUpFlags(flags);
+		robot.setStartDirection(Direction.values()[recording.getTag()]);
+		robot.setTelemetryFile(output.getPath());
+
+		long startTime = System.nanoTime();
+		try {
+			robot.run();
+		}
+		catch (IllegalStateException e) {
+			System.out.println(e.getMessage());
+			robot.stopTelemetry();
+		}
+		long time = System.nanoTime() - startTime;
+		control.closeConnection();
+
+		TelemetryReader replayed = new TelemetryReader(output);
+		System.out.printf("Replayed %d of %d records in %.1f ms (%.0f records/s)%n", backend.getRecordsReplayed(),
+				recording.getRecordCount(), time / 1e6, backend.getRecordsReplayed() * 1e9 / time);
+		return compare(recording, replayed);
+	}
+
+	/**
+	 * Compares the motor commands of two recordings control cycle by control cycle (skipping the records of
+	 * readings and tachometer counts), listing the first differences
+	 * @param expected TelemetryReader Original recording
+	 * @param actual TelemetryReader Replayed recording
+	 * @return int Number of cycles whose commands differ (including cycles missing from either)
+	 */
+	private static int compare(TelemetryReader expected, TelemetryReader actual) {
+		int[] expectedCycles = cycles(expected);
+		int[] actualCycles = cycles(actual);
+		int cycles = Math.min(expectedCycles.length, actualCycles.length);
+		int differences = Math.abs(expectedCycles.length - actualCycles.length);
+
+		for (int cycle = 0; cycle < cycles; cycle++) {
+			int i = expectedCycles[cycle];
+			int j = actualCycles[cycle];
+			String expectedCommands = expected.getCommandLeft(i) + " " + expected.getCommandRight(i);
+			String actualCommands = actual.getCommandLeft(j) + " " + actual.getCommandRight(j);
+			if (!expectedCommands.equals(actualCommands)) {
+				if (differences < MAX_DIFFERENCES_SHOWN) {
+					System.out.println("Cycle " + cycle + " (" + expected.getLightValueLeft(i) + ", "
+							+ expected.getLightValueRight(i) + ", " + expected.getDistance(i) + "): recorded "
+							+ expectedCommands + ", replayed " + actualCommands);
+				}
+				differences++;
+			}
+		}
+		return differences;
+	}
+
+	/**
+	 * Finds the records of control cycles in a recording
+	 * @param recording TelemetryReader Recording
+	 * @return int[] Indexes of the cycle records, in order
+	 */
+	private static int[] cycles(TelemetryReader recording) {
+		int[] cycles = new int[recording.getRecordCount()];
+		int count = 0;
+		for (int i = 0; i < recording.getRecordCount(); i++) {
+			if (recording.isCycle(i)) {
+				cycles[count++] = i;
+			}
+		}
+		return Arrays.copyOf(cycles, count);
+	}
+}
@@ -0,0 +1,193 @@
+/**
+ * Backend which feeds the sensor readings of a recorded run back to the robot's decision logic, as fast
+ * as it can process them. Each set of readings (left, right, then distance if it is due, as taken by
+ * RobotControl.readSensors()) comes from the next reading record. The control cycles recorded between the
+ * readings are followed by RobotControl, which takes the readings recorded before each cycle and decides from
+ * the one the cycle was decided from, as the robot may have taken readings it never decided from (with the
+ * background sampler). Reads of the tachometers made by RobotControl.updateOdometry() follow the counts recorded
+ * for them in turn. Motor commands and sound are ignored.
+ *
+ * @author Jack Deadman
+ * @author Joshua O'Leary
+ */
+
+public class ReplayBackend implements RobotBackend {
+	private final TelemetryReader recording;
+
+	// Last reading record replayed, last control cycle record followed and last tachometer counts record followed
+	private int reading = -1;
+	private int cycle = -1;
+	private int tachoCounts = -1;
+	private long time;
+
+	// Tachometer counts unwrapped from the 16 bits stored in each record
+	private final int[] tachoCount = new int[2];
+
+	/**
+	 * Constructs a new ReplayBackend
+	 * @param recording TelemetryReader Recorded run to replay
+	 */
+	public ReplayBackend(TelemetryReader recording) {
+		this.recording = recording;
+	}
+
+	/**
+	 * Returns the number of records replayed so far
+	 * @return int Number of records
+	 */
+	public int getRecordsReplayed() {
+		return Math.max(Math.max(reading, cycle), tachoCounts) + 1;
+	}
+
+	/**
+	 * Determines whether any readings were recorded before the next control cycle but have not been replayed
+	 * @return boolean True if there is a reading to replay before the next cycle
+	 */
+	public boolean hasReadingBeforeCycle() {
+		return findReading(reading) < findCycle();
+	}
+
+	/**
+	 * Returns the sequence number of the readings the next recorded control cycle was decided from
+	 * @return int Sequence number (as recorded)
+	 */
+	public int getCycleSequence() {
+		int next = findCycle();
+		if (next >= recording.getRecordCount()) {
+			throw new IllegalStateException("Replay ran past the end of the recording");
+		}
+		return recording.getSequence(next);
+	}
+
+	/**
+	 * Moves on from the next recorded control cycle, once it has been replayed
+	 */
+	public void endCycle() {
+		cycle = findCycle();
+	}
+
+	/**
+	 * Moves on to the next recorded read of the tachometers made outside a set of readings
+	 */
+	public void nextTachoCounts() {
+		int next = tachoCounts + 1;
+		while (next < recording.getRecordCount() && !recording.isTachoCounts(next)) {
+			next++;
+		}
+		if (next >= recording.getRecordCount()) {
+			throw new IllegalStateException("Replay ran past the end of the recording");
+		}
+		tachoCounts = next;
+	}
+
+	/**
+	 * Returns a tachometer count of the read moved on to by nextTachoCounts()
+	 * @param motor int Index of motor
+	 * @return int Tachometer count (in degrees)
+	 */
+	public int getRecordedTachoCount(int motor) {
+		return unwrap(tachoCounts, motor);
+	}
+
+	/**
+	 * Returns the sequence number of the last readings replayed
+	 * @return int Sequence number (as recorded), or -1 if no readings have been replayed
+	 */
+	public int getReadingSequence() {
+		return reading >= 0 ? recording.getSequence(reading) : -1;
+	}
+
+	public void open() {
+	}
+
+	public void close() {
+	}
+
+	public void prepareSensors() {
+	}
+
+	public boolean isRealTime() {
+		return false;
+	}
+
+	public int getLightValueLeft() {
+		// The left sensor is read first, so each read of it starts the next reading
+		int next = findReading(reading);
+		if (next >= recording.getRecordCount()) {
+			throw new IllegalStateException("Replay ran past the end of the recording");
+		}
+		reading = next;
+		// Time follows the recording, with delays between readings adding to it as they did originally
+		time = recording.getTimestamp(reading);
+		return recording.getLightValueLeft(reading);
+	}
+
+	public int getLightValueRight() {
+		return recording.getLightValueRight(Math.max(reading, 0));
+	}
+
+	public int getDistance() {
+		return recording.getDistance(Math.max(reading, 0));
+	}
+
+	public int getTachoCount(int motor) {
+		// readSensors() reads the tachometers just before the other sensors, so the counts are the ones held by
+		// the next reading (or the last record once they run out)
+		return unwrap(Math.min(findReading(reading), recording.getRecordCount() - 1), motor);
+	}
+
+	public void setMotorSpeed(int motor, int speed) {
+	}
+
+	public void setMotorDirection(int motor, MotorDirection direction, boolean verify) {
+	}
+
+	public void playTone(int hz, int duration) {
+	}
+
+	public long nanoTime() {
+		return time;
+	}
+
+	public void sleep(long millis) {
+		time += millis * 1000000L;
+	}
+
+	/**
+	 * Restores the full tachometer count held by a record
+	 * @param record int Index of record
+	 * @param motor int Index of motor
+	 * @return int Tachometer count (in degrees)
+	 */
+	private int unwrap(int record, int motor) {
+		// Adding the (wrapped) change since the last count read restores the full count
+		short recorded = recording.getTachoCount(Math.max(record, 0), motor);
+		tachoCount[motor] += (short)(recorded - tachoCount[motor]);
+		return tachoCount[motor];
+	}
+
+	/**
+	 * Finds the next reading record
+	 * @param after int Index of record to search after
+	 * @return int Index of reading record, or the number of records if there are none left
+	 */
+	private int findReading(int after) {
+		int next = after + 1;
+		while (next < recording.getRecordCount() && !recording.isReading(next)) {
+			next++;
+		}
+		return next;
+	}
+
+	/**
+	 * Finds the next control cycle record to be followed
+	 * @return int Index of cycle record, or the number of records if there are none left
+	 */
+	private int findCycle() {
+		int next = cycle + 1;
+		while (next < recording.getRecordCount() && !recording.isCycle(next)) {
+			next++;
+		}
+		return next;
+	}
+}
@@ -1,3 +1,7 @@
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+
 /**
  * Main program: class containing algorithms to line up and navigate robot to spot
  * 
@@ -6,24 +10,191 @@
  */
 
 public class Robot {
-	// Delay used by continuous loops to prevent intense CPU usage
-	private static final int DELAY_BETWEEN_CYCLES = 30;
+	// Time between steps of behaviours which run at the same time, short enough to time the notes of a tune
+	private static final int BEHAVIOUR_PERIOD = 10;
+
+	// Notes of the tune played on reaching the spot (frequencies in hertz)
+	private static final int[] FANFARE = {261, 261, 261, 329, 261, 329, 261, 261, 261, 329, 261, 329, 392,
+										440, 392, 349, 329, 293, 261};
+
+	// Distance an obstacle must move beyond the detection range before it is no longer detected
+	private static final int OBSTACLE_HYSTERESIS = 3;
+
+	// Robot being navigated
+	private final RobotControl control;
 
-	// Maximum distance of object detected before robot turns
-	private static final int OBSTACLE_DETECTION_RANGE = 14;
+	// Speeds, ranges and timings used to navigate (the period of the control loop also prevents intense CPU usage)
+	private NavigationParameters parameters = NavigationParameters.DEFAULT;
 
-	private static final Delayer CPU_REST = new Delayer(DELAY_BETWEEN_CYCLES);
+	// Runs continuous loops at a fixed rate, regardless of how long each cycle takes
+	private ControlLoopScheduler controlLoop;
 
-	private static Direction START_DIRECTION;
+	private Direction startDirection;
 
 	// Enables display of debug messages on console output
-	private static boolean debugMode = false;
+	private boolean debugMode = false;
+
+	// Steers continuously with the PID controller instead of switching between left, right and forward
+	private boolean pidSteering = false;
+
+	// Drives back and forth over the start line to calibrate the light sensors before lining up
+	private boolean calibrationSweep = false;
+
+	// Speed and distance (in cm) of each half of the calibration sweep, taking the sensors fully across the line
+	private static final int CALIBRATION_SWEEP_SPEED = 100;
+	private static final int CALIBRATION_SWEEP_DISTANCE = 6;
+	// Number of readings the whole sweep counts as once it is over
+	private static final int CALIBRATION_SWEEP_WEIGHT = 16;
+
+	// Turn made while celebrating (one and a quarter turns to the right, in degrees) and the wheels' top speed
+	private static final int CELEBRATION_TURN = -450;
+	private static final int CELEBRATION_SPEED = 450;
+
+	// Gains for continuous steering: the correction is a difference in wheel speed (degrees per second)
+	// for a line error between -1 and 1
+	private static final double STEERING_KP = 110;
+	private static final double STEERING_KI = 0;
+	private static final double STEERING_KD = 4;
+	private static final double STEERING_LIMIT = 200;
+
+	private final PidController steering =
+			new PidController(STEERING_KP, STEERING_KI, STEERING_KD, STEERING_LIMIT);
+
+	// Records every control cycle to telemetryFile if the -t flag is used
+	private boolean telemetry = false;
+	private static final String TELEMETRY_FILE = "telemetry.bin";
+	private String telemetryFile = TELEMETRY_FILE;
+
+	// Learns the course on the first run and drives it faster on later runs (keeping the map in courseFile) if
+	// the -l flag is used
+	private boolean courseLearning = false;
+	private static final String COURSE_FILE = "course.map";
+	private String courseFile = COURSE_FILE;
+
+	// Course learned on previous runs (null if none has been saved yet)
+	private CourseMap courseMap;
+
+	// Speed on known straights relative to the base speed, and how far ahead (in wheel degrees, about 25cm)
+	// the course must be straight, leaving room to slow down before a corner or the spot
+	private static final double COURSE_STRAIGHT_SPEED = 1.6;
+	private static final int COURSE_LOOKAHEAD = 500;
+
+	// Enough records for two minutes of cycles, in case writing to the file falls behind
+	private final TelemetryRecorder recorder = new TelemetryRecorder(4096);
+
+	// Longest time the control loop may go without a heartbeat before the robot is stopped (in milliseconds),
+	// and the speed (relative to the base speed) driven at for a while after a stall if the -w flag is used
+	private static final int WATCHDOG_BUDGET = 250;
+	private static final double DEGRADED_SPEED_FACTOR = 0.5;
+
+	private final ControlLoopWatchdog watchdog;
+
+	// Raises the base speed while steering is quiet and lowers it while steering is busy if the -g flag is used.
+	// Limits and acceleration are relative to the base speed: it is never dropped below the base speed, as
+	// switching steering weaves across the line however slowly the robot goes, so going slower only loses time.
+	private boolean adaptiveSpeed = false;
+	private static final double GOVERNOR_MIN_SPEED = 1.0;
+	private static final double GOVERNOR_MAX_SPEED = 1.6;
+	private static final double GOVERNOR_ACCELERATION = 0.5;
+
+	// Searches for the line if it is lost while navigating
+	private final LineRecovery lineRecovery;
+
+	// Plans the turn back to the line when an obstacle blocks it
+	private final DetourPlanner detourPlanner;
+
+	// Wheel speed while scanning the side about to be turned towards (degrees per second) and the number of
+	// control cycles the scan takes (about 40 degrees of turn), then the wheels' top speed for the rest of the turn
+	private static final int DETOUR_SCAN_SPEED = 300;
+	private static final int DETOUR_SCAN_CYCLES = 12;
+	private static final int DETOUR_SPEED = 450;
+
+	// Records every set of readings taken while recording, on whichever thread takes them, as the thresholds,
+	// filtered distance and events the robot decides from follow every reading (not just the ones decided from)
+	private final SensorEventListener telemetryListener = new SensorEventListener() {
+		public void onSensorEvent(SensorEvent event, SensorSnapshot snapshot) {
+			if (event == SensorEvent.READING) {
+				recordReading(snapshot);
+			}
+		}
+	};
+
+	// Records the counts of every read of the tachometers made outside a set of readings (by a move, or to measure
+	// a turn), as the readings only carry them from the next set on
+	private final TachoCountListener tachoCountListener = new TachoCountListener() {
+		public void onTachoCounts(int tachoCountLeft, int tachoCountRight, long timestamp) {
+			recordTachoCounts(tachoCountLeft, tachoCountRight, timestamp);
+		}
+	};
+
+	// Counts every set of readings taken while waiting for an event as a heartbeat, as the readings are what the
+	// robot is waiting on
+	private final SensorEventListener waitListener = new SensorEventListener() {
+		public void onSensorEvent(SensorEvent event, SensorSnapshot snapshot) {
+			if (event == SensorEvent.READING) {
+				watchdog.heartbeat();
+			}
+		}
+	};
+
+	/**
+	 * Constructs a new Robot
+	 * @param control RobotControl Robot to navigate, which must be initialised before run() is called
+	 */
+	public Robot(RobotControl control) {
+		this.control = control;
+		this.controlLoop = new ControlLoopScheduler(parameters.getCyclePeriod(), control.getClock());
+		this.watchdog = new ControlLoopWatchdog(control, WATCHDOG_BUDGET);
+		this.detourPlanner = new DetourPlanner();
+		this.lineRecovery = new LineRecovery(control);
+	}
+
+	/**
+	 * Sets the speeds, ranges and timings used to navigate
+	 * @param navigationParameters NavigationParameters Parameters to use
+	 */
+	public void setParameters(NavigationParameters navigationParameters) {
+		parameters = navigationParameters;
+		controlLoop = new ControlLoopScheduler(parameters.getCyclePeriod(), control.getClock());
+	}
+
+	/**
+	 * Sets the longest time the control loop may go without a heartbeat before the robot is stopped
+	 * @param budget int Latency budget (in milliseconds)
+	 */
+	public void setWatchdogBudget(int budget) {
+		watchdog.setBudget(budget);
+	}
+
+	/**
+	 * Returns the watchdog stopping the robot if the control loop stalls
+	 * @return ControlLoopWatchdog Watchdog
+	 */
+	public ControlLoopWatchdog getWatchdog() {
+		return watchdog;
+	}
+
+	/**
+	 * Returns the speeds, ranges and timings used to navigate
+	 * @return NavigationParameters Current parameters
+	 */
+	public NavigationParameters getParameters() {
+		return parameters;
+	}
+
+	/**
+	 * Returns the robot being navigated
+	 * @return RobotControl Robot's controls
+	 */
+	public RobotControl getControl() {
+		return control;
+	}
 
 	/**
 	 * Output to console if debug mode is on
 	 * @param object Object Object to display
 	 */
-	public static void debugLog(Object object) {
+	public void debugLog(Object object) {
 		if (debugMode) {
 			System.out.println(object);
 		}
@@ -33,158 +204,598 @@ public class Robot {
 	 * Move robot forward until it reaches the black line. The program execution is
 	 * blocked until the robot reaches destination)
 	 */
-	public static void navigateToStartLine() throws InterruptedException {
+	public void navigateToStartLine() throws InterruptedException {
 		debugLog("> Moving to start line...");
-		RobotControl.goForward();
+		control.goForward();
 		blockExecutionUntilOnLine();
 		debugLog(">> Reached line.");
 	}
 
+	/**
+	 * Drives the robot forward across the start line and back again while reading the light sensors, so the
+	 * thresholds are calibrated from both the line and the floor before navigating
+	 */
+	public void sweepCalibration() throws InterruptedException {
+		debugLog("> Calibrating...");
+
+		// The sweep reads the sensors itself, once per cycle, so the sampler is paused meanwhile rather than
+		// adding its own readings of the sweep to the calibrators as well
+		boolean sampling = control.isSampling();
+		control.stopSampler();
+		try {
+			sampleDuring(control.distanceMove(CALIBRATION_SWEEP_DISTANCE, CALIBRATION_SWEEP_SPEED));
+			sampleDuring(control.distanceMove(-CALIBRATION_SWEEP_DISTANCE, CALIBRATION_SWEEP_SPEED));
+			// The sweep sees mostly the edges of the line, so it only gives a starting point: it counts as a few
+			// readings against the defaults and the readings taken while following the line (discounted before
+			// the sampler adds any of those, so a replay, which takes them later, discounts the same readings)
+			control.discountCalibration(CALIBRATION_SWEEP_WEIGHT);
+		}
+		finally {
+			if (sampling) {
+				control.startSampler();
+			}
+		}
+
+		debugLog(">> Thresholds: " + control.getCalibrationSummary());
+	}
+
+	/**
+	 * Reads the sensors every cycle while a move is made (readings are added to the calibrators as they are
+	 * taken). The sampler must not be running, so each cycle takes new readings.
+	 * @param move ProfiledMove Move to make
+	 */
+	private void sampleDuring(ProfiledMove move) throws InterruptedException {
+		// The move reads the tachometers every cycle, so the readings carry its counts rather than reading them
+		// again a moment later
+		boolean readTachoCounts = control.isReadTachoCounts();
+		control.setReadTachoCounts(false);
+		BehaviourScheduler behaviours = new BehaviourScheduler(parameters.getCyclePeriod(), control.getClock());
+		final CompletableFuture<Void> moved = behaviours.add(move, 0);
+		behaviours.add(new Behaviour() {
+			public boolean usesMotors() {
+				return false;
+			}
+
+			public boolean step(long now) {
+				recordCycle(control.getLatestSnapshot(), now);
+				return !moved.isDone();
+			}
+		}, 0);
+		try {
+			behaviours.run();
+		}
+		finally {
+			control.setReadTachoCounts(readTachoCounts);
+		}
+	}
+
 	/**
 	 * Turns robot until the line is in between its sensors. The program execution is
 	 * blocked until the robot is lined up on the line
 	 */
-	public static void lineUpStart() throws InterruptedException {
+	public void lineUpStart() throws InterruptedException {
 		debugLog("> Lining up...");
-		// Value of '4' ensures robot turns tightly enough to move onto line correctly
-		if (START_DIRECTION == Direction.LEFT) {
-			RobotControl.goLeft(4.0);
+		// Tight turn (a factor of 4 by default) ensures robot moves onto line correctly
+		if (startDirection == Direction.LEFT) {
+			control.goLeft(parameters.getLineUpSpeedFactor());
 		}
 		else {
-			RobotControl.goRight(4.0);
+			control.goRight(parameters.getLineUpSpeedFactor());
 		}
 		blockExecutionUntilOnLine();
 		debugLog(">> Lined up.");
 	}
 
 	/**
-	 * Prevent executing anything until a robot leaves and re-enters the line
+	 * Prevent executing anything until a robot leaves and re-enters the line (if it is off the line already,
+	 * until it enters the line)
 	 */
-	public static void blockExecutionUntilOnLine() throws InterruptedException {
-		boolean hasComeOffLine = false;
+	public void blockExecutionUntilOnLine() throws InterruptedException {
+		awaitEvent(SensorEvent.ON_LINE);
+	}
 
-		while (!(hasComeOffLine && RobotControl.blackDetectedEither())) {
-			if (!RobotControl.blackDetectedEither()) {
-				hasComeOffLine = true;
-			}
-			CPU_REST.apply();
+	/**
+	 * Blocks until a sensor event occurs, recording the wait as a control cycle decided from the readings in
+	 * which the event was detected
+	 * @param event SensorEvent Event to wait for
+	 * @return SensorSnapshot Readings in which the event was detected
+	 */
+	private SensorSnapshot awaitEvent(SensorEvent event) throws InterruptedException {
+		long waitStart = control.getClock().nanoTime();
+		SensorEventDispatcher events = control.getEvents();
+		SensorSnapshot snapshot;
+		events.addListener(waitListener);
+		try {
+			snapshot = control.awaitEvent(event, controlLoop);
 		}
+		finally {
+			events.removeListener(waitListener);
+		}
+		recordCycle(snapshot, waitStart);
+		return snapshot;
 	}
 	
 	/**
 	 * Ensures the robot remains on the line by moving it left or right accordingly
+	 * @param snapshot SensorSnapshot Sensor readings for the current cycle
+	 * @return double How hard the robot is steering: 1 while either sensor is over the line (when both are,
+	 * the previous turn is kept), 0 while going forward
 	 */
-	public static void moveAlongLine() throws InterruptedException {
-		boolean leftSensorDetect = RobotControl.blackDetectedLeft();
-		boolean rightSensorDetect = RobotControl.blackDetectedRight();
+	public double moveAlongLine(SensorSnapshot snapshot) throws InterruptedException {
+		boolean leftSensorDetect = snapshot.blackDetectedLeft();
+		boolean rightSensorDetect = snapshot.blackDetectedRight();
 
 		if (leftSensorDetect && !rightSensorDetect) {
-			RobotControl.goLeft();
+			control.goLeft();
 		}
 		else if (!leftSensorDetect && rightSensorDetect) {
-			RobotControl.goRight();
+			control.goRight();
 		}
 		else if (!leftSensorDetect && !rightSensorDetect) {
-			RobotControl.goForward();
+			control.goForward();
+			return 0;
 		}
+		return 1;
 	}
 
 	/**
-	 * Plays a musical fanfare tune (blocking - holds up further execution)
-	 * @param noteLength int Duration of each note in milliseconds
+	 * Keeps the robot on the line by steering continuously in proportion to how far the line is from the
+	 * centre of the robot, rather than switching between fixed turns
+	 * @param snapshot SensorSnapshot Sensor readings for the current cycle
+	 * @return double How hard the robot is steering, between 0 (straight ahead) and 1 (the largest correction)
 	 */
-	public static void fanfare(int noteLength) throws InterruptedException {
-		int[] beepValues = {261, 261, 261, 329, 261, 329, 261, 261, 261, 329, 261, 329, 392,
-							440, 392, 349, 329, 293, 261};
+	public double followLine(SensorSnapshot snapshot) {
+		double correction = steering.update(snapshot.getLineError(), parameters.getCyclePeriod() / 1000.0);
+		int baseSpeed = control.getBaseSpeed();
+		control.setWheelSpeeds((int)(baseSpeed - correction), (int)(baseSpeed + correction));
+		return Math.abs(correction) / STEERING_LIMIT;
+	}
 
-		for (int beepValue : beepValues) {
-			// Beep is non-blocking so a wait is added so each note has time to be played
-			RobotControl.beep(noteLength, beepValue).waitFor(noteLength);
-		}
+	/**
+	 * Sets whether the robot steers continuously (PID) or switches between fixed turns
+	 * @param pid boolean True for continuous steering
+	 */
+	public void setPidSteering(boolean pid) {
+		pidSteering = pid;
 	}
 
 	/**
-	 * Makes robot spin and play tune
+	 * Makes robot spin and play tune at the same time
 	 */
-	public static void celebrate() throws InterruptedException {
+	public void celebrate() throws InterruptedException {
 		debugLog("> Starting victory sequence...");
 
-		RobotControl.goRightTurnOnSpot(900).waitFor(2500);
-		RobotControl.stop().waitFor(500);
-
-		fanfare(100);
+		// Spins right on the spot, reaching the same wheel speeds as goRightTurnOnSpot(900)
+		BehaviourScheduler behaviours = new BehaviourScheduler(BEHAVIOUR_PERIOD, control.getClock());
+		behaviours.add(control.rotationMove(CELEBRATION_TURN, CELEBRATION_SPEED), 1);
+		behaviours.add(new ToneSequence(control, FANFARE, 100), 0);
+		behaviours.run();
 	}
 
 	/**
 	 * Determines whether the robot has reached the spot (end goal) or not
+	 * @param snapshot SensorSnapshot Sensor readings for the current cycle
 	 * @return True if robot has reached spot
 	 */
-	public static boolean reachedSpot() {
+	public boolean reachedSpot(SensorSnapshot snapshot) {
 		// Need to ensure that there are no objects in range, preventing a false positive that can occur when
 		// turning at corners.
 		// + 5 is used because this needs to be checked before the robot gets to the turning point
-		return RobotControl.blackDetectedBoth() && !RobotControl.obstacleDetected(OBSTACLE_DETECTION_RANGE + 10);
+		return snapshot.spotDetectedBoth() && !snapshot.obstacleDetected(parameters.getObstacleRange() + 10);
 	}
 
 	/**
 	 * Main algorithm for guiding the robot from start position to the spot
 	 */
-	public static void navigateToSpot() throws InterruptedException {
+	public void navigateToSpot() throws InterruptedException {
 		debugLog("> Navigating to spot...");
 		// Keep navigating to spot until both sensors detect black and no obstacles are near it. 'Near' means in range
 		// of an object as opposed to right next to it.
 		// Near is used to prevent false positive of spot being detected when turning at corners
-		while (!reachedSpot()) {
-			if (RobotControl.obstacleDetected(OBSTACLE_DETECTION_RANGE)) {
+		// All sensors are read once per cycle so every decision in the cycle is based on the same readings
+		SensorEventDispatcher events = control.getEvents();
+		events.setObstacleRange(parameters.getObstacleRange(), OBSTACLE_HYSTERESIS);
+
+		// Tracks the distance travelled, learning the route unless it is already known
+		CourseLearner learner = courseLearning ? new CourseLearner(startDirection) : null;
+		CourseMap route = courseMap != null && courseMap.isLearned() ? courseMap : null;
+		CourseMap learned = null;
+
+		// Adapts the base speed to how hard the robot is steering
+		SpeedGovernor governor = null;
+		if (adaptiveSpeed) {
+			int baseSpeed = parameters.getBaseSpeed();
+			governor = new SpeedGovernor((int)(baseSpeed * GOVERNOR_MIN_SPEED), (int)(baseSpeed * GOVERNOR_MAX_SPEED),
+					baseSpeed * GOVERNOR_ACCELERATION);
+			governor.reset(baseSpeed);
+		}
+
+		long cycleStart = control.getClock().nanoTime();
+		SensorSnapshot snapshot = control.getLatestSnapshot();
+
+		steering.reset();
+		lineRecovery.reset(startDirection);
+		controlLoop.start();
+		while (!reachedSpot(snapshot)) {
+			if (events.isObstacleInRange(snapshot)) {
 				debugLog(">> Detected obstacle!");
-				if (START_DIRECTION == Direction.RIGHT) {
-					RobotControl.goLeftTurnOnSpot();
+				if (learner != null && learned == null) {
+					// The route learned so far leads away from the spot
+					learned = learner.turnedAround();
+					route = null;
+					control.setBaseSpeed(parameters.getBaseSpeed());
 				}
-				else {
-					RobotControl.goRightTurnOnSpot();
+				// Without a clear side, turns away from the direction of the first turn, as before detours
+				// were planned
+				Direction fallback = startDirection == Direction.RIGHT ? Direction.LEFT : Direction.RIGHT;
+				avoidObstacle(snapshot, cycleStart, fallback);
+				steering.reset();
+				lineRecovery.reset(fallback);
+				if (governor != null) {
+					governor.reset(parameters.getBaseSpeed());
 				}
-				blockExecutionUntilOnLine();
 			}
 			else {
-				moveAlongLine();
+				if (learner != null && learned == null) {
+					learner.update(snapshot);
+				}
+				int speed = governor != null ? governor.getSpeed() : parameters.getBaseSpeed();
+				if (route != null && route.isClearAhead(learner.getDistance(snapshot), COURSE_LOOKAHEAD)) {
+					speed = Math.max(speed, (int)(parameters.getBaseSpeed() * COURSE_STRAIGHT_SPEED));
+				}
+				if (watchdog.isDegraded()) {
+					speed = (int)(parameters.getBaseSpeed() * DEGRADED_SPEED_FACTOR);
+				}
+				control.setBaseSpeed(speed);
+				// Continuous steering follows the line by how dark each sensor is rather than whether it is over
+				// black, so only switching steering searches for a line neither sensor can see
+				LineRecovery.Stage stage = lineRecovery.getStage();
+				double steered;
+				if (pidSteering) {
+					steered = followLine(snapshot);
+				}
+				else if (lineRecovery.update(snapshot)) {
+					if (stage == LineRecovery.Stage.TRACKING) {
+						debugLog(">> Lost line, last seen on the "
+								+ lineRecovery.getLastSeen().toString().toLowerCase());
+					}
+					// The first turn towards the line is gentler than a correction, so only sweeping and
+					// spiralling slow the governor down (on a straight the line is usually just between the sensors)
+					steered = lineRecovery.getStage() == LineRecovery.Stage.BIAS ? 0 : 1;
+				}
+				else {
+					if (stage != LineRecovery.Stage.TRACKING) {
+						debugLog(">> Found line again");
+					}
+					steered = moveAlongLine(snapshot);
+				}
+				if (governor != null) {
+					governor.update(steered, snapshot.getTimestamp());
+				}
+				recordCycle(snapshot, cycleStart);
 			}
-			CPU_REST.apply();
+			controlLoop.waitForNextCycle();
+
+			cycleStart = control.getClock().nanoTime();
+			snapshot = control.getLatestSnapshot();
+			watchdog.heartbeat(snapshot);
 		}
+		recordCycle(snapshot, cycleStart);
 		debugLog(">> Found spot.");
+
+		control.setBaseSpeed(parameters.getBaseSpeed());
+		if (learner != null) {
+			if (learned == null && route == null) {
+				learned = learner.reachedSpot(snapshot);
+			}
+			if (learned != null) {
+				saveCourse(learned);
+			}
+		}
+		debugLog(">> Control loop: " + controlLoop);
+		debugLog(">> Watchdog: " + watchdog);
+		debugLog(">> Line recovery: " + lineRecovery);
+		if (governor != null) {
+			debugLog(">> Speed governor: " + governor);
+		}
+	}
+
+	/**
+	 * Turns the robot back to the line when an obstacle blocks it. The turn starts with a short scan, turning
+	 * towards the side the detour planner chose while the ultrasonic sensor is read each cycle: if an obstacle
+	 * is still in range on that side the robot turns the other way instead. The rest of the turn is made
+	 * quickly up to just before the line, then slowly until the line is found.
+	 * @param snapshot SensorSnapshot Readings in which the obstacle was detected
+	 * @param cycleStart long Time the cycle in which they were taken started
+	 * @param fallback Direction Side to turn towards if the robot is centred on the line
+	 */
+	private void avoidObstacle(SensorSnapshot snapshot, long cycleStart, Direction fallback)
+			throws InterruptedException {
+		Direction side = detourPlanner.chooseSide(snapshot, fallback);
+		double startHeading = control.updateOdometry().getHeading();
+		turnOnSpot(side, DETOUR_SCAN_SPEED);
+		// Recorded once the turn has started, so the record shows the command the readings led to
+		recordCycle(snapshot, cycleStart);
+
+		SensorSnapshot scan = snapshot;
+		for (int cycle = 0; cycle < DETOUR_SCAN_CYCLES; cycle++) {
+			controlLoop.waitForNextCycle();
+			long scanStart = control.getClock().nanoTime();
+			scan = control.getLatestSnapshot();
+			recordCycle(scan, scanStart);
+			watchdog.heartbeat(scan);
+		}
+
+		double turned = control.updateOdometry().getHeading() - startHeading;
+		if (side == Direction.RIGHT) {
+			turned = -turned;
+		}
+		// The raw reading is used as the filtered one lags behind the turn, still holding the obstacle ahead
+		if (scan.getRawDistance() <= parameters.getObstacleRange()) {
+			debugLog(">> Obstacle on the " + side.toString().toLowerCase() + " too, turning the other way");
+			side = side == Direction.LEFT ? Direction.RIGHT : Direction.LEFT;
+			turned = -turned;
+		}
+
+		double fastTurn = detourPlanner.getFastTurn(snapshot, side, turned);
+		debugLog(String.format(">> Detour: turning %s (line %.1f cm to the left), %.0f deg quickly",
+				side.toString().toLowerCase(), detourPlanner.getLineOffset(snapshot), fastTurn));
+		turnQuickly(side == Direction.LEFT ? fastTurn : -fastTurn);
+
+		turnOnSpot(side, parameters.getBaseSpeed());
+		blockExecutionUntilOnLine();
+	}
+
+	/**
+	 * Spins the robot on the spot
+	 * @param side Direction Side to turn towards
+	 * @param speed int Speed of each wheel (degrees per second)
+	 */
+	private void turnOnSpot(Direction side, int speed) {
+		if (side == Direction.LEFT) {
+			control.setWheelSpeeds(-speed, speed);
+		}
+		else {
+			control.setWheelSpeeds(speed, -speed);
+		}
+	}
+
+	/**
+	 * Turns the robot on the spot through an angle measured by the tachometers, keeping the watchdog fed as
+	 * no readings are taken meanwhile
+	 * @param degrees double Rotation (in degrees, positive to the left)
+	 */
+	private void turnQuickly(double degrees) throws InterruptedException {
+		BehaviourScheduler behaviours = new BehaviourScheduler(BEHAVIOUR_PERIOD, control.getClock());
+		final CompletableFuture<Void> turned = behaviours.add(control.rotationMove(degrees, DETOUR_SPEED), 0);
+		behaviours.add(new Behaviour() {
+			public boolean usesMotors() {
+				return false;
+			}
+
+			public boolean step(long now) {
+				watchdog.heartbeat();
+				return !turned.isDone();
+			}
+		}, 0);
+		behaviours.run();
+	}
+
+	/**
+	 * Adds a control cycle to the telemetry, if recording (synchronized, as readings are recorded by the
+	 * background sampler's thread)
+	 * @param snapshot SensorSnapshot Sensor readings the cycle was decided from
+	 * @param cycleStart long Time the cycle started (from RobotControl's clock, in nanoseconds)
+	 */
+	private synchronized void recordCycle(SensorSnapshot snapshot, long cycleStart) {
+		if (recorder.isRecording()) {
+			recorder.record(snapshot, control.getLastCommandLeft(), control.getLastCommandRight(),
+					control.getClock().nanoTime() - cycleStart);
+		}
+	}
+
+	/**
+	 * Adds a set of readings to the telemetry as they are taken, if recording
+	 * @param snapshot SensorSnapshot Sensor readings
+	 */
+	private synchronized void recordReading(SensorSnapshot snapshot) {
+		if (recorder.isRecording()) {
+			recorder.recordReading(snapshot, control.getLastCommandLeft(), control.getLastCommandRight());
+		}
+	}
+
+	/**
+	 * Adds the counts of a read of the tachometers to the telemetry, if recording
+	 * @param tachoCountLeft int Tachometer count of the left wheel (in degrees)
+	 * @param tachoCountRight int Tachometer count of the right wheel (in degrees)
+	 * @param timestamp long Time the tachometers were read (from RobotControl's clock, in nanoseconds)
+	 */
+	private synchronized void recordTachoCounts(int tachoCountLeft, int tachoCountRight, long timestamp) {
+		if (recorder.isRecording()) {
+			recorder.recordTachoCounts(timestamp, tachoCountLeft, tachoCountRight, control.getLastCommandLeft(),
+					control.getLastCommandRight());
+		}
+	}
+
+	/**
+	 * Sets whether the course is learned and driven from the map in courseFile
+	 * @param learning boolean True to learn the course on the first run and drive faster on later runs
+	 */
+	public void setCourseLearning(boolean learning) {
+		courseLearning = learning;
+	}
+
+	/**
+	 * Sets the file the course map is kept in (robots running at the same time must each have their own)
+	 * @param file String File to keep the map in, or null for the default file
+	 */
+	public void setCourseFile(String file) {
+		courseFile = file != null ? file : COURSE_FILE;
+	}
+
+	/**
+	 * Loads the course learned on previous runs from courseFile, taking the start direction from it
+	 */
+	public void loadCourse() {
+		File file = new File(courseFile);
+		if (!file.exists()) {
+			debugLog("> No course map, learning course");
+			return;
+		}
+		try {
+			courseMap = CourseMap.load(file);
+			setStartDirection(courseMap.getDirection());
+			debugLog("> Course map: " + courseMap);
+		}
+		catch (IOException e) {
+			System.out.println("Could not load course map: " + e.getMessage());
+		}
+	}
+
+	/**
+	 * Saves the course learned on this run to courseFile
+	 * @param map CourseMap Course learned
+	 */
+	private void saveCourse(CourseMap map) {
+		try {
+			map.save(new File(courseFile));
+			courseMap = map;
+			debugLog("> Learned course: " + map);
+		}
+		catch (IOException e) {
+			System.out.println("Could not save course map: " + e.getMessage());
+		}
+	}
+
+	/**
+	 * Sets whether each run is recorded, and the file it is recorded to
+	 * @param file String File to record to, or null to stop recording runs
+	 */
+	public void setTelemetryFile(String file) {
+		telemetry = file != null;
+		telemetryFile = file != null ? file : TELEMETRY_FILE;
+	}
+
+	/**
+	 * Starts recording telemetry to telemetryFile, storing the start direction in the file's header
+	 */
+	public void startTelemetry() {
+		try {
+			// A run which is not in real time (simulated or replayed) waits for the recorder rather than losing
+			// records, as a replay compares every one
+			recorder.setWaitWhenFull(!control.getBackend().isRealTime());
+			recorder.open(new File(telemetryFile), startDirection.ordinal());
+			control.getEvents().addListener(telemetryListener);
+			control.addTachoCountListener(tachoCountListener);
+			debugLog("> Recording telemetry to " + telemetryFile);
+		}
+		catch (IOException e) {
+			System.out.println("Could not record telemetry: " + e.getMessage());
+		}
+	}
+
+	/**
+	 * Stops recording telemetry, writing any remaining records to the file (does nothing if not recording)
+	 */
+	public void stopTelemetry() throws InterruptedException {
+		if (!recorder.isRecording()) {
+			return;
+		}
+		control.getEvents().removeListener(telemetryListener);
+		control.removeTachoCountListener(tachoCountListener);
+		try {
+			recorder.close();
+			debugLog("> Telemetry: " + recorder.getRecordsWritten() + " records, "
+					+ recorder.getRecordsDropped() + " dropped");
+		}
+		catch (IOException e) {
+			System.out.println("Could not finish recording telemetry: " + e.getMessage());
+		}
 	}
 
 	/**
 	 * Determine direction of robot's first turn
 	 */
-	public static void setRandomDirection() {
+	public void setRandomDirection() {
 		if (Math.random() >= 0.5) {
-			START_DIRECTION = Direction.LEFT;
+			startDirection = Direction.LEFT;
 		}
 		else {
-			START_DIRECTION = Direction.RIGHT;
+			startDirection = Direction.RIGHT;
 		}
-		debugLog("> Start direction: " + START_DIRECTION);
+		debugLog("> Start direction: " + startDirection);
+	}
+
+	/**
+	 * Set the direction of robot's first turn (instead of choosing it randomly)
+	 * @param direction Direction Direction of first turn
+	 */
+	public void setStartDirection(Direction direction) {
+		startDirection = direction;
+		debugLog("> Start direction: " + startDirection);
+	}
+
+	/**
+	 * Turns display of debug messages on or off
+	 * @param debug boolean True to display debug messages
+	 */
+	public void setDebugMode(boolean debug) {
+		debugMode = debug;
 	}
 
 	/**
 	 * Set up program based on input from command-line flags (for debug and stopping)
 	 * @param args String[] Command-line arguments (passed in from main)
 	 */
-	public static void setUpFlags(String[] args) {
-		if (args.length == 1) {
-			String flag = args[0];
+	public void setUpFlags(String[] args) {
+		for (String flag : args) {
 			// Outputs debugging information if -d flag is used when calling the program
 			if (flag.equals("-d")) {
 				debugMode = true;
 				debugLog("Debug Mode");
 			}
+			else if (flag.equals("-p")) {
+				pidSteering = true;
+				debugLog("PID steering");
+			}
+			else if (flag.equals("-t")) {
+				telemetry = true;
+				debugLog("Telemetry");
+			}
+			else if (flag.equals("-c")) {
+				calibrationSweep = true;
+				debugLog("Calibration sweep");
+			}
+			else if (flag.equals("-l")) {
+				courseLearning = true;
+				debugLog("Course learning");
+			}
+			else if (flag.equals("-w")) {
+				watchdog.setDegradedMode(true);
+				debugLog("Degraded mode after stalls");
+			}
+			else if (flag.equals("-g")) {
+				adaptiveSpeed = true;
+				debugLog("Adaptive speed");
+			}
+			else if (flag.equals("-u")) {
+				control.setSamplingPolicy(SamplingPolicy.EVERY_CYCLE);
+				debugLog("Ultrasonic sensor read every cycle");
+			}
 			else if (flag.equals("-s")) {
 				System.out.println("Stopping robot...");
-				RobotControl.stop();
+				control.stop();
 				System.exit(0);
 			}
 			else if (flag.equals("-h")) {
 				System.out.println("-d\tDebug Mode");
+				System.out.println("-p\tSteer continuously (PID)");
+				System.out.println("-c\tCalibrate light sensors at the start line");
+				System.out.println("-t\tRecord telemetry to " + TELEMETRY_FILE);
+				System.out.println("-l\tLearn the course, then drive it faster (map kept in " + COURSE_FILE + ")");
+				System.out.println("-g\tSpeed up on straights and slow down in corners");
+				System.out.println("-w\tDrive slowly for a while after the control loop stalls");
+				System.out.println("-u\tRead the ultrasonic sensor every cycle, unfiltered");
 				System.out.println("-s\tStop the robot");
 				System.exit(0);
 			}
@@ -195,29 +806,86 @@ public class Robot {
 		}
 	}
 	
-	public static void main(String[] args) throws InterruptedException {
-		RobotControl.initialise();
-		setUpFlags(args);
-
-		setRandomDirection();
-
+	/**
+	 * Runs the whole task: lines up on the line, navigates to the spot and celebrates. The connection must
+	 * already be initialised and the start direction set.
+	 */
+	public void run() throws InterruptedException {
 		// Stop robot in case already moving from running program previously
-		RobotControl.stop();
-		RobotControl.setBaseSpeed(150);
+		control.stop();
+		control.setBaseSpeed(parameters.getBaseSpeed());
+		control.setSpeedFactor(parameters.getSpeedFactor());
+		if (courseLearning) {
+			loadCourse();
+			control.setReadTachoCounts(true);
+		}
 
-		navigateToStartLine();
-		RobotControl.stop().waitFor(2000);
+		// Recording starts first, so every reading the sampler takes is recorded
+		if (telemetry) {
+			startTelemetry();
+		}
+		// Sensors are read on a background thread from now on so decisions never wait on the connection
+		control.startSampler();
 
-		lineUpStart();
-		navigateToSpot();
+		// The watchdog only watches loops which drive the robot towards the line, not the deliberate pause
+		watchdog.arm();
+		try {
+			navigateToStartLine();
+		}
+		finally {
+			watchdog.disarm();
+		}
+		control.stop().waitFor(2000);
+		if (calibrationSweep) {
+			sweepCalibration();
+		}
 
-		// Wait for 1.85 seconds to give robot time to move onto spot before calling ending sequence
-		RobotControl.goForward().waitFor(1850);
-		RobotControl.stop();
+		watchdog.arm();
+		try {
+			lineUpStart();
+			navigateToSpot();
+		}
+		finally {
+			watchdog.disarm();
+		}
+		debugLog("> Thresholds: " + control.getCalibrationSummary());
+		debugLog("> Sampling rate: " + control.getSamplingRate() + " samples/s");
+		debugLog("> Motor commands sent: " + control.getMotorCommandsIssued() + ", suppressed: "
+				+ control.getMotorCommandsSuppressed() + ", dropped: " + control.getMotorCommandsDropped());
+		debugLog("> Reconnections: " + control.getReconnects());
+
+		// Drive (14cm by default) from where the sensors found the spot until the robot is over it, slowing to a
+		// stop rather than braking from full speed
+		control.driveDistance(parameters.getFinalApproachDistance(), parameters.getBaseSpeed());
+		if (telemetry) {
+			stopTelemetry();
+		}
 
 		celebrate();
-		RobotControl.closeConnection();
-		debugLog("> Finished!");
+	}
+
+	public static void main(String[] args) throws InterruptedException {
+		RobotControl control = new RobotControl();
+		control.initialise();
+		Robot robot = new Robot(control);
+		// Flags are handled before the sensors are set up, so stopping the robot (-s) only sends the command
+		robot.setUpFlags(args);
+		control.prepareSensors();
+
+		robot.setRandomDirection();
+		try {
+			robot.run();
+		}
+		catch (IllegalStateException e) {
+			// e.g. the line could not be found again, or the connection could not be restored
+			System.out.println("Run abandoned: " + e.getMessage());
+		}
+		finally {
+			// Telemetry is finished even if the run was not, so a failed run can still be replayed
+			robot.stopTelemetry();
+			control.closeConnection();
+		}
+		robot.debugLog("> Finished!");
 	}
 }
 
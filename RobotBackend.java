@@ -0,0 +1,81 @@
+/**
+ * Hardware (or simulated hardware) behind RobotControl: provides raw sensor readings, motor control,
+ * sound and the clock used for timing the robot's movement
+ *
+ * @author Jack Deadman
+ * @author Joshua O'Leary
+ */
+
+public interface RobotBackend extends Clock {
+	// Indexes used to identify the motors
+	int MOTOR_LEFT = 0;
+	int MOTOR_RIGHT = 1;
+
+	/**
+	 * Establishes connection with robot (sensors may be set up when they are first read)
+	 */
+	void open();
+
+	/**
+	 * Starts setting up the sensors in the background, so they are ready by the time they are first read
+	 */
+	void prepareSensors();
+
+	/**
+	 * Ends connection with robot
+	 */
+	void close();
+
+	/**
+	 * Determines whether the backend runs in real time (background threads are only used if it does)
+	 * @return boolean True if backend runs in real time
+	 */
+	boolean isRealTime();
+
+	/**
+	 * Reads the left light sensor
+	 * @return int Raw light value
+	 */
+	int getLightValueLeft();
+
+	/**
+	 * Reads the right light sensor
+	 * @return int Raw light value
+	 */
+	int getLightValueRight();
+
+	/**
+	 * Reads the ultrasonic sensor
+	 * @return int Distance to nearest object (in cm)
+	 */
+	int getDistance();
+
+	/**
+	 * Reads a motor's tachometer
+	 * @param motor int Index of motor
+	 * @return int Angle the motor has turned since the connection was opened (in degrees, positive forward)
+	 */
+	int getTachoCount(int motor);
+
+	/**
+	 * Sets a motor's speed
+	 * @param motor int Index of motor
+	 * @param speed int Speed (degrees per second)
+	 */
+	void setMotorSpeed(int motor, int speed);
+
+	/**
+	 * Sets a motor's direction of rotation
+	 * @param motor int Index of motor
+	 * @param direction MotorDirection Direction to rotate in (or STOPPED)
+	 * @param verify boolean True to wait for the robot to acknowledge the command
+	 */
+	void setMotorDirection(int motor, MotorDirection direction, boolean verify);
+
+	/**
+	 * Plays a tone (non-blocking)
+	 * @param hz int Frequency in hertz
+	 * @param duration int Length of tone in milliseconds
+	 */
+	void playTone(int hz, int duration);
+}
@@ -1,10 +1,14 @@
-import icommand.nxt.*;
-import icommand.nxt.comm.NXTCommand;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
- * Wrapper class for abstracting from NXT icommand library, configured specifically for our robot's
- * sensors, and callibration. All methods are static as there can only be one connection 
- * to a robot at a time, so therefore there is no need for the ability of multiple instances.
+ * Wrapper class for abstracting from the robot's hardware (through a RobotBackend, by default our NXT
+ * robot via the icommand library), configured specifically for our robot's sensors, and callibration.
+ * Each instance controls one robot, with its own connection, sensors, motors, thresholds and base speed,
+ * so several robots can be driven from one program. (icommand itself only holds one connection to an NXT
+ * per program, so at most one instance can use NxtBackend at a time.)
  * 
  * @author Jack Deadman
  * @author Joshua O'Leary
@@ -18,55 +22,548 @@ public class RobotControl {
 	// Default frequency used for beeping
 	private static final int DEFAULT_BEEP_FREQ = 500;
 
-	private static final Motor MOTOR_LEFT = Motor.C;
-	private static final Motor MOTOR_RIGHT = Motor.B;
+	// Time between steps of a distance or angle move (each step reads both tachometers)
+	private static final int MOVE_PERIOD = 10;
+
+	// Indexes of the motors
+	private static final int LEFT = RobotBackend.MOTOR_LEFT;
+	private static final int RIGHT = RobotBackend.MOTOR_RIGHT;
+
+	// Hardware the robot is controlled through (set with setBackend() before initialise()), wrapped so that
+	// every read and command sent over the connection is timed
+	private RobotBackend backend;
+	private RobotBackend unwrappedBackend;
+
+	// Reconnects if the connection to a real robot drops (null for simulated backends, which never lose
+	// their connection, and whose errors are deliberate)
+	private ConnectionManager connection;
+
+	// Recorded run being replayed, if the backend is one, and the last readings replayed from it
+	private ReplayBackend replay;
+	private SensorSnapshot replayedSnapshot;
+
+	// Motors only send commands when their state changes, as most cycles repeat the previous command
+	private CachedMotor motorLeft;
+	private CachedMotor motorRight;
+
+	// Sends motor commands in the background so movement methods return without waiting on the connection
+	private MotorCommandWriter motorWriter;
+
+	// Whether stop() waits for the robot to acknowledge the command
+	private boolean verifyStop = true;
+
+	// Commands most recently given to each motor (whether or not they have been sent yet)
+	private volatile MotorCommand lastCommandLeft;
+	private volatile MotorCommand lastCommandRight;
+
+	// Whether the motors are held stopped (see hold()), during which new commands are only remembered
+	// (guarded by holdLock, so a command cannot be queued after the motors have been stopped by hold())
+	private final Object holdLock = new Object();
+	private boolean held = false;
 
 	// Light threshold values for both sensors (maximum brightness by which black is detected),
-	// callibrated specifically for our robot's sensors
+	// callibrated specifically for our robot's sensors. Only used until the calibrators have seen enough readings.
 	private static final int LEFT_LIGHT_THRESHOLD = 520;
 	private static final int RIGHT_LIGHT_THESHOLD = 570;
-	
-	// SensorPort for Light Sensor
-	private static final SensorPort L_SENSOR_PORT_LEFT = SensorPort.S2;
-	private static final SensorPort L_SENSOR_PORT_RIGHT = SensorPort.S1;
-	
-	// SensorPort for Ultrasonic Sensor
-	private static final SensorPort U_SENSOR_PORT = SensorPort.S4;
-	
-	// Lightsensor objects
-	private static LightSensor lightSensorLeft;
-	private static LightSensor lightSensorRight;
-	
-	// Ultrasonic disance sensor object
-	private static UltrasonicSensor objectSensor;
+
+	// Typical readings over the black line and the white floor for both sensors, used to scale raw light values
+	// for continuous steering (the thresholds above lie halfway between them)
+	private static final int LEFT_BLACK_VALUE = 460;
+	private static final int LEFT_WHITE_VALUE = 580;
+	private static final int RIGHT_BLACK_VALUE = 500;
+	private static final int RIGHT_WHITE_VALUE = 640;
+
+	// Derive the thresholds from the readings seen so far, so they follow changes in ambient light
+	private final LightCalibrator calibratorLeft =
+			new LightCalibrator(LEFT_LIGHT_THRESHOLD, LEFT_BLACK_VALUE, LEFT_WHITE_VALUE);
+	private final LightCalibrator calibratorRight =
+			new LightCalibrator(RIGHT_LIGHT_THESHOLD, RIGHT_BLACK_VALUE, RIGHT_WHITE_VALUE);
+
+	// Whether every light reading is added to the calibrators
+	private boolean autoCalibration = true;
+
+	// Sequence number given to the next set of sensor readings
+	private final AtomicLong sensorSequence = new AtomicLong();
+
+	// How often each sensor is read, and how ultrasonic readings are filtered
+	private SamplingPolicy samplingPolicy = SamplingPolicy.DEFAULT;
+
+	// Background sampler publishing the latest sensor readings, at the light sensors' rate
+	private SensorSampler sampler = new SensorSampler(this, samplingPolicy.getLightInterval());
+
+	// Watchdogs watching this robot's control loops, disarmed when the connection is closed
+	private final CopyOnWriteArrayList<ControlLoopWatchdog> watchdogs = new CopyOnWriteArrayList<ControlLoopWatchdog>();
+
+	// Median of recent ultrasonic readings, along with the latest reading and when it was taken
+	// (all guarded by distanceLock, as both the sampler and direct queries read the sensor)
+	private final Object distanceLock = new Object();
+	private MedianFilter distanceFilter = new MedianFilter(samplingPolicy.getDistanceFilterSize());
+	private int rawDistance;
+	private int filteredDistance;
+	private long distanceTimestamp;
+	private boolean distanceRead;
+
+	// Whether readSensors() also reads the wheels' tachometers (two extra round-trips per set of readings)
+	private volatile boolean readTachoCounts = false;
+
+	// Position estimated from the tachometers, updated whenever they are read
+	private final Odometry odometry = new Odometry();
+
+	// Notified of the counts read by updateOdometry()
+	private final CopyOnWriteArrayList<TachoCountListener> tachoCountListeners =
+			new CopyOnWriteArrayList<TachoCountListener>();
+
+	// Time of the previous set of readings, used to decide whether the ultrasonic sensor is due
+	private long previousSnapshotTimestamp;
+
+	// Dispatches changes in every set of readings taken (no obstacle range until one is set with
+	// getEvents().setObstacleRange())
+	private final SensorEventDispatcher events = new SensorEventDispatcher(-1, 0);
 
 	// "Base" speed (used by most of the movement functions - all speed is relative to this)
-	private static int baseSpeed = 100;
+	private int baseSpeed = 100;
+
+	// Ratio between the wheels used by goLeft() and goRight() when no ratio is given
+	private double speedFactor = DEFAULT_SPEED_FACTOR;
+
+	// Delegates to the backend's clock, so delays follow simulated time when running in the simulator
+	private final Clock clock = new Clock() {
+		public long nanoTime() {
+			return backend.nanoTime();
+		}
+
+		public void sleep(long millis) throws InterruptedException {
+			backend.sleep(millis);
+		}
+	};
+
+	// Returned by every movement method: waitFor() does not depend on the Delayer's state, so one instance
+	// is shared rather than allocating a new one on every command
+	private final Delayer delayer = new Delayer(0, clock);
+
+	// Latency of each operation, timed with the backend's clock so simulated link latency is included
+	private final ControlMetrics metrics = new ControlMetrics(clock);
+	private final LatencyHistogram readSensorsLatency = metrics.histogram("readSensors");
+	private final LatencyHistogram blackDetectedLatency = metrics.histogram("blackDetected");
+	private final LatencyHistogram obstacleDetectedLatency = metrics.histogram("obstacleDetected");
+	// Movement commands are only queued for the motor command writer, so "moveSubmit" times queuing them (the
+	// commands themselves are timed as they are sent, by "backend.motorSpeed" and "backend.motorDirection")
+	private final LatencyHistogram moveSubmitLatency = metrics.histogram("moveSubmit");
+	private final LatencyHistogram stopLatency = metrics.histogram("stop");
+	private final LatencyHistogram beepLatency = metrics.histogram("beep");
+	private final LatencyHistogram getLatestSnapshotLatency = metrics.histogram("getLatestSnapshot");
+	private final LatencyHistogram awaitEventLatency = metrics.histogram("awaitEvent");
+	private final LatencyHistogram updateOdometryLatency = metrics.histogram("updateOdometry");
+	private final LatencyHistogram driveDistanceLatency = metrics.histogram("driveDistance");
+	private final LatencyHistogram rotateLatency = metrics.histogram("rotate");
+	// Only starting the tune is timed, as it plays in the background on the real robot
+	private final LatencyHistogram playMelodyLatency = metrics.histogram("playMelody");
+
+	// Whether a summary of the latencies is printed when the connection is closed
+	private boolean printMetricsOnClose = true;
+
+	/**
+	 * Constructs a new RobotControl for our NXT robot, connected through icommand
+	 */
+	public RobotControl() {
+		this(new NxtBackend());
+	}
+
+	/**
+	 * Constructs a new RobotControl
+	 * @param robotBackend RobotBackend Hardware the robot is controlled through
+	 */
+	public RobotControl(RobotBackend robotBackend) {
+		setBackend(robotBackend);
+	}
+
+	/**
+	 * Sets the hardware the robot is controlled through (must be called before initialise())
+	 * @param robotBackend RobotBackend Backend to use
+	 */
+	public void setBackend(RobotBackend robotBackend) {
+		unwrappedBackend = robotBackend;
+		connection = robotBackend.isRealTime() ? new ConnectionManager(robotBackend) : null;
+		replay = robotBackend instanceof ReplayBackend ? (ReplayBackend)robotBackend : null;
+		replayedSnapshot = null;
+		backend = new MeteredBackend(connection != null ? connection : robotBackend, metrics);
+		motorLeft = new CachedMotor(backend, LEFT);
+		motorRight = new CachedMotor(backend, RIGHT);
+		motorWriter = new MotorCommandWriter(motorLeft, motorRight);
+	}
+
+	/**
+	 * Returns the hardware the robot is controlled through
+	 * @return RobotBackend Current backend
+	 */
+	public RobotBackend getBackend() {
+		return unwrappedBackend;
+	}
+
+	/**
+	 * Returns the clock of the current backend, to be used for all timing of the robot's movement
+	 * @return Clock Robot's clock
+	 */
+	public Clock getClock() {
+		return clock;
+	}
+
+	/**
+	 * Establishes connection with robot. Sensors are set up when they are first read, or in the background
+	 * once prepareSensors() is called, so sending a single command (such as stopping the robot) is quick.
+	 */
+	public void initialise() {
+		metrics.reset();
+		resetDistance();
+		events.reset();
+		odometry.reset();
+		backend.open();
+
+		// Background threads would make the simulator non-deterministic, so commands are sent directly instead
+		if (backend.isRealTime()) {
+			motorWriter.start();
+		}
+	}
+
+	/**
+	 * Starts setting up the sensors in the background, so the first readings do not wait for them
+	 */
+	public void prepareSensors() {
+		backend.prepareSensors();
+	}
+
+	/**
+	 * Returns the number of times the connection has been reopened after dropping
+	 * @return long Number of reconnections
+	 */
+	public long getReconnects() {
+		return connection != null ? connection.getReconnects() : 0;
+	}
+
+	/**
+	 * Ends connection with robot, sending any pending motor commands and stopping the sensor sampler and any
+	 * watchdogs if they are running
+	 */
+	public void closeConnection() throws InterruptedException {
+		// Watchdogs are stopped first, as a stall would otherwise stop the robot over a closed connection
+		for (ControlLoopWatchdog watchdog : watchdogs) {
+			watchdog.disarm();
+		}
+		stopSampler();
+		motorWriter.stop();
+		backend.close();
+
+		if (printMetricsOnClose) {
+			System.out.print(metrics.summary());
+		}
+	}
+
+	/**
+	 * Adds a watchdog to be disarmed when the connection is closed
+	 * @param watchdog ControlLoopWatchdog Watchdog watching this robot
+	 */
+	public void addWatchdog(ControlLoopWatchdog watchdog) {
+		watchdogs.add(watchdog);
+	}
+
+	/**
+	 * Returns the latencies recorded for each operation since initialise() was called
+	 * @return ControlMetrics Latency histograms
+	 */
+	public ControlMetrics getMetrics() {
+		return metrics;
+	}
+
+	/**
+	 * Sets whether a summary of the latencies is printed when the connection is closed
+	 * @param print boolean True to print the summary
+	 */
+	public void setPrintMetricsOnClose(boolean print) {
+		printMetricsOnClose = print;
+	}
+
+	/**
+	 * Sets how often each sensor is read and how ultrasonic readings are filtered
+	 * @param policy SamplingPolicy Policy to use
+	 * @throws IllegalStateException If the background sampler is running
+	 */
+	public void setSamplingPolicy(SamplingPolicy policy) {
+		if (sampler.isRunning()) {
+			throw new IllegalStateException("Sampling policy cannot be changed while the sampler is running");
+		}
+		samplingPolicy = policy;
+		sampler = new SensorSampler(this, policy.getLightInterval());
+		synchronized (distanceLock) {
+			distanceFilter = new MedianFilter(policy.getDistanceFilterSize());
+			resetDistance();
+		}
+	}
+
+	/**
+	 * Returns how often each sensor is read and how ultrasonic readings are filtered
+	 * @return SamplingPolicy Current policy
+	 */
+	public SamplingPolicy getSamplingPolicy() {
+		return samplingPolicy;
+	}
+
+	/**
+	 * Starts reading sensors continuously on a background thread, so that getLatestSnapshot()
+	 * returns without waiting on the connection. Blocks until the first readings are available.
+	 * Has no effect if the backend does not run in real time.
+	 */
+	public void startSampler() throws InterruptedException {
+		if (backend.isRealTime()) {
+			sampler.start();
+		}
+	}
+
+	/**
+	 * Stops the background sensor sampler
+	 */
+	public void stopSampler() throws InterruptedException {
+		sampler.stop();
+	}
+
+	/**
+	 * Returns the most recent sensor readings: published by the background sampler if it is running,
+	 * otherwise read directly from the sensors (or, in a replay, the readings the recorded cycle was decided
+	 * from)
+	 * @return SensorSnapshot Latest sensor readings
+	 */
+	public SensorSnapshot getLatestSnapshot() {
+		long start = clock.nanoTime();
+		SensorSnapshot snapshot;
+		if (replay != null) {
+			snapshot = replayCycle();
+		}
+		else {
+			snapshot = sampler.isRunning() ? sampler.getLatest() : null;
+			if (snapshot == null) {
+				snapshot = readSensors();
+			}
+		}
+		getLatestSnapshotLatency.recordSince(start);
+		return snapshot;
+	}
+
+	/**
+	 * Replays the readings recorded before the next control cycle of a replayed run, up to the ones the cycle
+	 * was decided from. Readings recorded after those (taken by the sampler while the cycle was decided) are
+	 * left for the next cycle.
+	 * @return SensorSnapshot Readings the cycle was decided from, or the last readings replayed if they were
+	 * not recorded
+	 */
+	private SensorSnapshot replayCycle() {
+		int sequence = replay.getCycleSequence();
+		// A cycle decided from the same readings as the previous one (before the sampler took new ones) replays
+		// no new readings
+		while (replayedSnapshot == null || replay.getReadingSequence() != sequence) {
+			if (replayedSnapshot != null && !replay.hasReadingBeforeCycle()) {
+				break;
+			}
+			replayedSnapshot = readSensors();
+		}
+		replay.endCycle();
+		return replayedSnapshot;
+	}
+
+	/**
+	 * Returns how old the latest readings published by the sampler are
+	 * @return long Age in nanoseconds, or -1 if the sampler has not published any readings
+	 */
+	public long getSampleAge() {
+		return sampler.getSampleAge();
+	}
+
+	/**
+	 * Returns the rate at which the background sampler is reading the sensors
+	 * @return double Samples per second
+	 */
+	public double getSamplingRate() {
+		return sampler.getSamplingRate();
+	}
+
+	/**
+	 * Returns the total number of samples taken by the background sampler
+	 * @return long Number of samples
+	 */
+	public long getSampleCount() {
+		return sampler.getSampleCount();
+	}
+
+	/**
+	 * Determines whether the background sampler is reading the sensors
+	 * @return boolean True if the sampler is running
+	 */
+	public boolean isSampling() {
+		return sampler.isRunning();
+	}
 
 	/**
-	 * Establishes connection with robot and sets up sensors
+	 * Returns the dispatcher of events detected in the sensor readings, notified of every set of readings taken
+	 * @return SensorEventDispatcher Sensor event dispatcher
 	 */
-	public static void initialise() {
-		NXTCommand.open();
-		NXTCommand.setVerify(true);
-		
-		lightSensorLeft = new LightSensor(L_SENSOR_PORT_LEFT);
-		lightSensorRight = new LightSensor(L_SENSOR_PORT_RIGHT);
-		objectSensor = new UltrasonicSensor(U_SENSOR_PORT);
+	public SensorEventDispatcher getEvents() {
+		return events;
 	}
 
 	/**
-	 * Ends connection with robot
+	 * Blocks until the next occurrence of a sensor event. If the background sampler is running, the thread
+	 * sleeps until the sampler detects the event; otherwise the sensors are read once per cycle of the given
+	 * loop until it occurs.
+	 * @param event SensorEvent Event to wait for
+	 * @param loop ControlLoopScheduler Loop pacing the readings if the sampler is not running
+	 * @return SensorSnapshot Readings in which the event was detected
 	 */
-	public static void closeConnection() {
-		NXTCommand.close();
+	public SensorSnapshot awaitEvent(SensorEvent event, ControlLoopScheduler loop) throws InterruptedException {
+		long start = clock.nanoTime();
+		try {
+			return waitForEvent(event, loop);
+		}
+		finally {
+			awaitEventLatency.recordSince(start);
+		}
+	}
+
+	/**
+	 * Blocks until the next occurrence of a sensor event, as described for awaitEvent()
+	 * @param event SensorEvent Event to wait for
+	 * @param loop ControlLoopScheduler Loop pacing the readings if the sampler is not running
+	 * @return SensorSnapshot Readings in which the event was detected
+	 */
+	private SensorSnapshot waitForEvent(SensorEvent event, ControlLoopScheduler loop) throws InterruptedException {
+		// A wait is recorded as a cycle decided from the readings in which the event was detected
+		if (replay != null) {
+			return replayCycle();
+		}
+
+		CompletableFuture<SensorSnapshot> future = events.next(event);
+		try {
+			if (sampler.isRunning()) {
+				return future.get();
+			}
+
+			readSensors();
+			loop.start();
+			while (!future.isDone()) {
+				loop.waitForNextCycle();
+				readSensors();
+			}
+			return future.get();
+		}
+		catch (ExecutionException e) {
+			throw new IllegalStateException("Sensors could not be read while waiting for " + event, e.getCause());
+		}
+		finally {
+			// Stops the future being completed later if waiting was interrupted
+			future.cancel(false);
+		}
+	}
+
+	/**
+	 * Returns the number of motor commands sent to the robot
+	 * @return long Number of motor commands sent
+	 */
+	public long getMotorCommandsIssued() {
+		return motorLeft.getCommandsIssued() + motorRight.getCommandsIssued();
+	}
+
+	/**
+	 * Returns the number of motor commands not sent because the motors were already in the requested state
+	 * @return long Number of motor commands suppressed
+	 */
+	public long getMotorCommandsSuppressed() {
+		return motorLeft.getCommandsSuppressed() + motorRight.getCommandsSuppressed();
+	}
+
+	/**
+	 * Returns the number of motor commands dropped because a newer command replaced them before they were sent
+	 * @return long Number of motor commands dropped
+	 */
+	public long getMotorCommandsDropped() {
+		return motorWriter.getCommandsDropped();
+	}
+
+	/**
+	 * Sets whether stop() waits for the robot to acknowledge the command
+	 * @param verify boolean True to verify stop commands
+	 */
+	public void setVerifyStop(boolean verify) {
+		verifyStop = verify;
+	}
+
+	/**
+	 * Queues new commands for both motors, replacing any commands which have not been sent yet
+	 * @param left MotorCommand Command for left motor
+	 * @param right MotorCommand Command for right motor
+	 */
+	private void setMotors(MotorCommand left, MotorCommand right) {
+		long start = clock.nanoTime();
+		synchronized (holdLock) {
+			lastCommandLeft = left;
+			lastCommandRight = right;
+			if (!held) {
+				motorWriter.submit(LEFT, left);
+				motorWriter.submit(RIGHT, right);
+			}
+		}
+		moveSubmitLatency.recordSince(start);
+	}
+
+	/**
+	 * Stops the motors until release() is called, without forgetting the commands given to them: any
+	 * commands given meanwhile are remembered but not sent. Used to stop the robot while its control
+	 * loop cannot be trusted, for example while waiting on a stalled connection.
+	 */
+	public void hold() {
+		synchronized (holdLock) {
+			if (held) {
+				return;
+			}
+			held = true;
+			motorWriter.send(LEFT, MotorCommand.STOP, verifyStop);
+			motorWriter.send(RIGHT, MotorCommand.STOP, verifyStop);
+		}
+	}
+
+	/**
+	 * Ends a hold() and sends the commands most recently given to the motors
+	 */
+	public void release() {
+		synchronized (holdLock) {
+			if (!held) {
+				return;
+			}
+			held = false;
+			if (lastCommandLeft != null && lastCommandRight != null) {
+				motorWriter.submit(LEFT, lastCommandLeft);
+				motorWriter.submit(RIGHT, lastCommandRight);
+			}
+		}
+	}
+
+	/**
+	 * Returns the command most recently given to the left motor
+	 * @return MotorCommand Last command, or null if none has been given
+	 */
+	public MotorCommand getLastCommandLeft() {
+		return lastCommandLeft;
+	}
+
+	/**
+	 * Returns the command most recently given to the right motor
+	 * @return MotorCommand Last command, or null if none has been given
+	 */
+	public MotorCommand getLastCommandRight() {
+		return lastCommandRight;
 	}
 
 	/**
 	 * Set the robot's base speed for all movement
 	 * @param speed int Robot's base speed
 	 */
-	public static void setBaseSpeed(int speed) {
+	public void setBaseSpeed(int speed) {
 		baseSpeed = speed;
 	}
 
@@ -74,41 +571,63 @@ public class RobotControl {
 	 * Get the robot's base speed, used for all movement
 	 * @return int Robot's base speed
 	 */
-	public static int getBaseSpeed() {
+	public int getBaseSpeed() {
 		return baseSpeed;
 	}
 
 	/**
-	 * Base method for determining whether a light sensor detects black within a given threshold
-	 * @param lsensor LightSensor NXT LightSensor
+	 * Set the ratio between the wheel speeds used when turning with goLeft() and goRight()
+	 * @param factor double Ratio between the speeds of the two wheels (values of zero or less mean the default)
+	 */
+	public void setSpeedFactor(double factor) {
+		speedFactor = factor > 0 ? factor : DEFAULT_SPEED_FACTOR;
+	}
+
+	/**
+	 * Get the ratio between the wheel speeds used when turning with goLeft() and goRight()
+	 * @return double Ratio between the speeds of the two wheels
+	 */
+	public double getSpeedFactor() {
+		return speedFactor;
+	}
+
+	/**
+	 * Base method for determining whether a light sensor reading is black within a given threshold
+	 * @param lightValue int Raw light sensor reading
 	 * @param threshold int Highest value for which black is still detected
-	 * @return boolean Returns true if given light sensor detects black
+	 * @return boolean Returns true if given reading is black
 	 */
-	private static boolean blackDetected(LightSensor lsensor, int threshold) {
-		return lsensor.getLightValue() <= threshold;
+	private static boolean blackDetected(int lightValue, int threshold) {
+		return lightValue <= threshold;
 	}
 
 	/**
 	 * Determines whether the left light sensor detects black
 	 * @return boolean True if left sensor detects black
 	 */
-	public static boolean blackDetectedLeft() {
-		return blackDetected(lightSensorLeft, LEFT_LIGHT_THRESHOLD);
+	public boolean blackDetectedLeft() {
+		long start = clock.nanoTime();
+		boolean detected = blackDetected(backend.getLightValueLeft(), calibratorLeft.getLineThreshold());
+		blackDetectedLatency.recordSince(start);
+		return detected;
 	}
 
 	/**
 	 * Determines whether the right light sensor detects black
 	 * @return boolean True if right sensor detects black
 	 */
-	public static boolean blackDetectedRight() {
-		return blackDetected(lightSensorRight, RIGHT_LIGHT_THESHOLD);
+	public boolean blackDetectedRight() {
+		long start = clock.nanoTime();
+		boolean detected = blackDetected(backend.getLightValueRight(), calibratorRight.getLineThreshold());
+		blackDetectedLatency.recordSince(start);
+		return detected;
 	}
 
 	/**
 	 * Helper method determining whether either sensor detects black
 	 * @return boolean True if either sensors detects black
 	 */
-	public static boolean blackDetectedEither() {
+	public boolean blackDetectedEither() {
 		return blackDetectedLeft() || blackDetectedRight();
 	}
 
@@ -116,7 +635,7 @@ public class RobotControl {
 	 * Helper method determining whether both sensors detects black
 	 * @return boolean True if both sensors detects black
 	 */
-	public static boolean blackDetectedBoth() {
+	public boolean blackDetectedBoth() {
 		return blackDetectedLeft() && blackDetectedRight();
 	}
 
@@ -125,8 +644,245 @@ public class RobotControl {
 	 * @param range int Furthest distance until object is still detected (in cm)
 	 * @return boolean True if obstacle is detected
 	 */
-	public static boolean obstacleDetected(int range) {
-		return objectSensor.getDistance() <= range;
+	public boolean obstacleDetected(int range) {
+		long start = clock.nanoTime();
+		int distance = backend.getDistance();
+		boolean detected;
+		synchronized (distanceLock) {
+			detected = addDistance(distance, backend.nanoTime()) <= range;
+		}
+		obstacleDetectedLatency.recordSince(start);
+		return detected;
+	}
+
+	/**
+	 * Returns the latest filtered ultrasonic reading, without reading the sensor
+	 * @return int Distance to nearest object (in cm), or 0 if the sensor has not been read
+	 */
+	public int getDistance() {
+		synchronized (distanceLock) {
+			return filteredDistance;
+		}
+	}
+
+	/**
+	 * Returns how old the latest ultrasonic reading is
+	 * @return long Age in nanoseconds, or -1 if the sensor has not been read
+	 */
+	public long getDistanceAge() {
+		synchronized (distanceLock) {
+			return distanceRead ? clock.nanoTime() - distanceTimestamp : -1;
+		}
+	}
+
+	/**
+	 * Adds an ultrasonic reading to the filter (distanceLock must be held)
+	 * @param distance int Raw reading (in cm)
+	 * @param timestamp long Time the reading was taken
+	 * @return int Filtered distance (in cm)
+	 */
+	private int addDistance(int distance, long timestamp) {
+		rawDistance = distance;
+		filteredDistance = distanceFilter.add(distance);
+		distanceTimestamp = timestamp;
+		distanceRead = true;
+		return filteredDistance;
+	}
+
+	/**
+	 * Forgets all ultrasonic readings
+	 */
+	private void resetDistance() {
+		synchronized (distanceLock) {
+			distanceFilter.reset();
+			rawDistance = 0;
+			filteredDistance = 0;
+			distanceRead = false;
+		}
+	}
+
+	/**
+	 * Reads both light sensors, and the ultrasonic sensor if its reading is due under the sampling policy,
+	 * so a full control cycle can be decided from a single set of readings rather than a separate round-trip
+	 * for each check
+	 * @return SensorSnapshot Readings of all sensors
+	 */
+	public SensorSnapshot readSensors() {
+		long start = clock.nanoTime();
+		// Tachometers are read before the other sensors, so the counts stored with a set of readings are the
+		// last ones read before it whether they were read here or by a move (which is what a replay gives
+		// back for every read since the previous set)
+		if (readTachoCounts) {
+			odometry.update(backend.getTachoCount(LEFT), backend.getTachoCount(RIGHT));
+		}
+		int tachoCountLeft = odometry.getTachoCountLeft();
+		int tachoCountRight = odometry.getTachoCountRight();
+
+		int lightValueLeft = backend.getLightValueLeft();
+		int lightValueRight = backend.getLightValueRight();
+
+		int distance;
+		int lastRawDistance;
+		long lastDistanceTimestamp;
+		long timestamp;
+		synchronized (distanceLock) {
+			// Whether the reading is due is judged at the previous set of readings rather than by the clock,
+			// so a replayed run reads the ultrasonic sensor on the same cycles as the recorded one
+			long age = distanceRead ? previousSnapshotTimestamp - distanceTimestamp : -1;
+			if (samplingPolicy.isDistanceDue(age)) {
+				int reading = backend.getDistance();
+				timestamp = backend.nanoTime();
+				addDistance(reading, timestamp);
+			}
+			else {
+				timestamp = backend.nanoTime();
+			}
+			previousSnapshotTimestamp = timestamp;
+			distance = filteredDistance;
+			lastRawDistance = rawDistance;
+			lastDistanceTimestamp = distanceTimestamp;
+		}
+
+		if (autoCalibration) {
+			calibratorLeft.addSample(lightValueLeft);
+			calibratorRight.addSample(lightValueRight);
+		}
+
+		SensorSnapshot snapshot = new SensorSnapshot(lightValueLeft, lightValueRight, distance,
+				lastRawDistance, lastDistanceTimestamp, tachoCountLeft, tachoCountRight,
+				blackDetected(lightValueLeft, calibratorLeft.getLineThreshold()),
+				blackDetected(lightValueRight, calibratorRight.getLineThreshold()),
+				blackDetected(lightValueLeft, calibratorLeft.getSpotThreshold()),
+				blackDetected(lightValueRight, calibratorRight.getSpotThreshold()),
+				darkness(lightValueLeft, calibratorLeft) - darkness(lightValueRight, calibratorRight),
+				timestamp, sensorSequence.getAndIncrement());
+		readSensorsLatency.recordSince(start);
+
+		events.update(snapshot);
+		return snapshot;
+	}
+
+	/**
+	 * Returns the number of sets of readings taken by readSensors()
+	 * @return long Number of sets of readings
+	 */
+	public long getReadingsTaken() {
+		return sensorSequence.get();
+	}
+
+	/**
+	 * Scales a raw light value to how dark it is
+	 * @param lightValue int Raw light sensor reading
+	 * @param calibrator LightCalibrator Calibrator of the sensor the reading came from
+	 * @return double Darkness between 0 (white) and 1 (black)
+	 */
+	private static double darkness(int lightValue, LightCalibrator calibrator) {
+		double white = calibrator.getWhiteValue();
+		return Math.max(0, Math.min(1, (white - lightValue) / (white - calibrator.getBlackValue())));
+	}
+
+	/**
+	 * Sets whether readSensors() reads the wheels' tachometers along with the other sensors
+	 * @param enabled boolean True to include tachometer counts in each set of readings
+	 */
+	public void setReadTachoCounts(boolean enabled) {
+		readTachoCounts = enabled;
+	}
+
+	/**
+	 * Determines whether readSensors() reads the wheels' tachometers along with the other sensors
+	 * @return boolean True if tachometer counts are included in each set of readings
+	 */
+	public boolean isReadTachoCounts() {
+		return readTachoCounts;
+	}
+
+	/**
+	 * Reads both tachometers and updates the position estimated from them
+	 * @return Odometry Updated estimate
+	 */
+	public Odometry updateOdometry() {
+		long start = clock.nanoTime();
+		int left;
+		int right;
+		if (replay != null) {
+			// The readings only carry these counts from the next set on, so a replay follows the counts recorded
+			// for each read instead
+			replay.nextTachoCounts();
+			left = replay.getRecordedTachoCount(LEFT);
+			right = replay.getRecordedTachoCount(RIGHT);
+		}
+		else {
+			left = backend.getTachoCount(LEFT);
+			right = backend.getTachoCount(RIGHT);
+		}
+		odometry.update(left, right);
+
+		long timestamp = clock.nanoTime();
+		for (TachoCountListener listener : tachoCountListeners) {
+			listener.onTachoCounts(left, right, timestamp);
+		}
+		updateOdometryLatency.recordSince(start);
+		return odometry;
+	}
+
+	/**
+	 * Registers a listener to be notified of the counts read by every call to updateOdometry()
+	 * @param listener TachoCountListener Listener to add
+	 */
+	public void addTachoCountListener(TachoCountListener listener) {
+		tachoCountListeners.add(listener);
+	}
+
+	/**
+	 * Stops notifying a listener of the counts read
+	 * @param listener TachoCountListener Listener to remove
+	 */
+	public void removeTachoCountListener(TachoCountListener listener) {
+		tachoCountListeners.remove(listener);
+	}
+
+	/**
+	 * Returns the position estimated from the tachometers when they were last read (by updateOdometry(), or
+	 * by readSensors() if it reads them)
+	 * @return Odometry Estimate, relative to where the robot was when the connection was initialised
+	 */
+	public Odometry getOdometry() {
+		return odometry;
+	}
+
+	/**
+	 * Sets whether light readings are used to keep the thresholds calibrated
+	 * @param enabled boolean True to calibrate continuously
+	 */
+	public void setAutoCalibration(boolean enabled) {
+		autoCalibration = enabled;
+	}
+
+	/**
+	 * Forgets all readings used for calibration, going back to the default thresholds
+	 */
+	public void resetCalibration() {
+		calibratorLeft.reset();
+		calibratorRight.reset();
+	}
+
+	/**
+	 * Makes the readings used for calibration so far count as only a given number of readings, weighing the
+	 * thresholds derived from them against the defaults (see LightCalibrator.discount())
+	 * @param samples int Number of readings of each sensor the readings so far count as
+	 */
+	public void discountCalibration(int samples) {
+		calibratorLeft.discount(samples);
+		calibratorRight.discount(samples);
+	}
+
+	/**
+	 * Describes the current light thresholds of both sensors
+	 * @return String Thresholds of left and right sensors
+	 */
+	public String getCalibrationSummary() {
+		return "left: " + calibratorLeft + "; right: " + calibratorRight;
 	}
 
 	/**
@@ -136,9 +892,11 @@ public class RobotControl {
 	 * @return Delayer Used to chain waitFor() to prevent further program execution until beep has fully sounded,
 	 * used for playing a sequence of notes.
 	 */
-	public static Delayer beep(int duration, int hz) {
-		Sound.playTone(hz, duration);
-		return new Delayer();
+	public Delayer beep(int duration, int hz) {
+		long start = clock.nanoTime();
+		backend.playTone(hz, duration);
+		beepLatency.recordSince(start);
+		return delayer;
 	}
 
 	/**
@@ -147,28 +905,44 @@ public class RobotControl {
 	 * @return Delayer Used to chain waitFor() to prevent further program execution until beep has fully sounded,
 	 * used for playing a sequence of notes.
 	 */
-	public static Delayer beep(int duration) {
+	public Delayer beep(int duration) {
 		return beep(duration, DEFAULT_BEEP_FREQ);
 	}
 
+	/**
+	 * Plays a tune without waiting for it: each note is started at a fixed time from the start of the tune on
+	 * a background thread, so the tune neither holds up the caller nor stretches with the connection's latency.
+	 * Backends which are not real-time play the whole tune before returning, as their time only passes when
+	 * the caller sleeps (use a ToneSequence to play a tune alongside other behaviours).
+	 * @param frequencies int[] Frequency of each note (in hertz)
+	 * @param noteLength int Duration of each note (in milliseconds)
+	 * @return CompletableFuture&lt;Void&gt; Completed once the last note has finished sounding
+	 */
+	public CompletableFuture<Void> playMelody(int[] frequencies, int noteLength) throws InterruptedException {
+		long start = clock.nanoTime();
+		MelodySequencer melody = new MelodySequencer(this, frequencies, noteLength);
+		if (!melody.start()) {
+			melody.play();
+		}
+		playMelodyLatency.recordSince(start);
+		return melody.getFinished();
+	}
+
 	/**
 	 * Instruct robot to move forward at a given speed
 	 * @param  speed int Speed of forward movement (degrees per second)
 	 * @return Delayer Used to chain waitFor() to provide a minimum duration of movement is achieved
 	 */
-	public static Delayer goForward(int speed) {
-		MOTOR_LEFT.setSpeed(speed);
-		MOTOR_RIGHT.setSpeed(speed);
-		MOTOR_LEFT.forward();
-		MOTOR_RIGHT.forward();
-		return new Delayer();
+	public Delayer goForward(int speed) {
+		setMotors(new MotorCommand(speed, MotorDirection.FORWARD), new MotorCommand(speed, MotorDirection.FORWARD));
+		return delayer;
 	}
 
 	/**
 	 * Instruct robot to move forward at the base speed (degrees per second)
 	 * @return Delayer Used to chain waitFor() to provide a minimum duration of movement is achieved
 	 */
-	public static Delayer goForward() {
+	public Delayer goForward() {
 		return goForward(baseSpeed);
 	}
 
@@ -177,30 +951,44 @@ public class RobotControl {
 	 * @param  speed int Speed of backward movement (degrees per second)
 	 * @return Delayer Used to chain waitFor() to provide a minimum duration of movement is achieved
 	 */
-	public static Delayer goBackward(int speed) {
-		MOTOR_LEFT.setSpeed(speed);
-		MOTOR_RIGHT.setSpeed(speed);
-		MOTOR_LEFT.backward();
-		MOTOR_RIGHT.backward();
-		return new Delayer();
+	public Delayer goBackward(int speed) {
+		setMotors(new MotorCommand(speed, MotorDirection.BACKWARD), new MotorCommand(speed, MotorDirection.BACKWARD));
+		return delayer;
 	}
 
 	/**
 	 * Instruct robot to move backward at the baseSpeed
 	 * @return Delayer Used to chain waitFor() to provide a minimum duration of movement is achieved
 	 */
-	public static Delayer goBackward() {
+	public Delayer goBackward() {
 		return goBackward(baseSpeed);
 	}
 
 	/**
-	 * Instruct the robot to stop all movement
+	 * Instruct robot to drive each wheel at its own speed, allowing continuous steering
+	 * @param leftSpeed int Speed of left wheel (degrees per second, negative to go backward)
+	 * @param rightSpeed int Speed of right wheel (degrees per second, negative to go backward)
 	 * @return Delayer Used to chain waitFor() to provide a minimum duration of movement is achieved
 	 */
-	public static Delayer stop() {
-		MOTOR_LEFT.stop();
-		MOTOR_RIGHT.stop();
-		return new Delayer();
+	public Delayer setWheelSpeeds(int leftSpeed, int rightSpeed) {
+		setMotors(new MotorCommand(Math.abs(leftSpeed), leftSpeed >= 0 ? MotorDirection.FORWARD : MotorDirection.BACKWARD),
+				new MotorCommand(Math.abs(rightSpeed), rightSpeed >= 0 ? MotorDirection.FORWARD : MotorDirection.BACKWARD));
+		return delayer;
+	}
+
+	/**
+	 * Instruct the robot to stop all movement. Unlike other movement, the command is sent straight away
+	 * (discarding any pending commands) rather than queued.
+	 * @return Delayer Used to chain waitFor() to provide a minimum duration of movement is achieved
+	 */
+	public Delayer stop() {
+		long start = clock.nanoTime();
+		lastCommandLeft = MotorCommand.STOP;
+		lastCommandRight = MotorCommand.STOP;
+		motorWriter.send(LEFT, MotorCommand.STOP, verifyStop);
+		motorWriter.send(RIGHT, MotorCommand.STOP, verifyStop);
+		stopLatency.recordSince(start);
+		return delayer;
 	}
 
 	/**
@@ -208,26 +996,24 @@ public class RobotControl {
 	 * @param speedFactor double Ratio between the speeds of the two wheels: higher the ratio, the sharper the turn
 	 * @return Delayer Used to chain waitFor() to provide a minimum duration of movement is achieved
 	 */
-	public static Delayer goLeft(double speedFactor) {
+	public Delayer goLeft(double speedFactor) {
 		// Change zero and negative values to a default, preventing unwanted / dangerous behaviour		
 		if(speedFactor > 0) {
-			MOTOR_LEFT.setSpeed((int)(baseSpeed / speedFactor));
-			MOTOR_RIGHT.setSpeed(baseSpeed);
-			MOTOR_LEFT.forward();
-			MOTOR_RIGHT.forward();
+			setMotors(new MotorCommand((int)(baseSpeed / speedFactor), MotorDirection.FORWARD),
+					new MotorCommand(baseSpeed, MotorDirection.FORWARD));
 		}
 		else {
 			goLeft();
 		}
-		return new Delayer();
+		return delayer;
 	}
 
 	/**
 	 * Instruct robot to turn left using the default speed ratio
 	 * @return Delayer Used to chain waitFor() to provide a minimum duration of movement is achieved
 	 */
-	public static Delayer goLeft() {
-		return goLeft(DEFAULT_SPEED_FACTOR);
+	public Delayer goLeft() {
+		return goLeft(speedFactor);
 	}
 
 	/**
@@ -235,26 +1021,24 @@ public class RobotControl {
 	 * @param speedFactor double Ratio between the speeds of the two wheels: higher the ratio, the sharper the turn
 	 * @return Delayer Used to chain waitFor() to provide a minimum duration of movement is achieved
 	 */
-	public static Delayer goRight(double speedFactor) {
+	public Delayer goRight(double speedFactor) {
 		// Change zero and negative values to a default, preventing unwanted / dangerous behaviour
 		if(speedFactor > 0) {
-			MOTOR_LEFT.setSpeed(baseSpeed);
-			MOTOR_RIGHT.setSpeed((int)(baseSpeed / speedFactor));
-			MOTOR_LEFT.forward();
-			MOTOR_RIGHT.forward();
+			setMotors(new MotorCommand(baseSpeed, MotorDirection.FORWARD),
+					new MotorCommand((int)(baseSpeed / speedFactor), MotorDirection.FORWARD));
 		}
 		else {
 			goRight();
 		}
-		return new Delayer();
+		return delayer;
 	}
 
 	/**
 	 * Instruct robot to turn right using the default speed ratio
 	 * @return Delayer Used to chain waitFor() to provide a minimum duration of movement is achieved
 	 */
-	public static Delayer goRight() {
-		return goRight(DEFAULT_SPEED_FACTOR);
+	public Delayer goRight() {
+		return goRight(speedFactor);
 	}
 
 	/**
@@ -262,20 +1046,17 @@ public class RobotControl {
 	 * @param speed int Speed for turning left
 	 * @return Delayer Used to chain waitFor() to provide a minimum duration of movement is achieved
 	 */
-	public static Delayer goLeftTurnOnSpot(int speed) {
+	public Delayer goLeftTurnOnSpot(int speed) {
 		// Division by two gives a more desirable turning speed relative to the base speed
-		MOTOR_LEFT.setSpeed(speed / 2);
-		MOTOR_RIGHT.setSpeed(speed / 2);
-		MOTOR_LEFT.backward();
-		MOTOR_RIGHT.forward();
-		return new Delayer();
+		setMotors(new MotorCommand(speed / 2, MotorDirection.BACKWARD), new MotorCommand(speed / 2, MotorDirection.FORWARD));
+		return delayer;
 	}
 
 	/**
 	 * Helper method to instruct the robot to spin left on the spot (using the base speed)
 	 * @return Delayer Used to chain waitFor() to provide a minimum duration of movement is achieved
 	 */
-	public static Delayer goLeftTurnOnSpot() {
+	public Delayer goLeftTurnOnSpot() {
 		return goLeftTurnOnSpot(baseSpeed);
 	}
 
@@ -284,103 +1065,178 @@ public class RobotControl {
 	 * @param speed int Speed for turning right
 	 * @return Delayer Used to chain waitFor() to provide a minimum duration of movement is achieved
 	 */
-	public static Delayer goRightTurnOnSpot(int speed) {
-		MOTOR_LEFT.setSpeed(speed / 2);
-		MOTOR_RIGHT.setSpeed(speed / 2);
-		MOTOR_LEFT.forward();
-		MOTOR_RIGHT.backward();
-		return new Delayer();
+	public Delayer goRightTurnOnSpot(int speed) {
+		setMotors(new MotorCommand(speed / 2, MotorDirection.FORWARD), new MotorCommand(speed / 2, MotorDirection.BACKWARD));
+		return delayer;
 	}
 
 	/**
 	 * Helper method to instruct the robot to spin right on the spot (using the base speed)
 	 * @return Delayer Used to chain waitFor() to provide a minimum duration of movement is achieved
 	 */
-	public static Delayer goRightTurnOnSpot() {
+	public Delayer goRightTurnOnSpot() {
 		return goRightTurnOnSpot(baseSpeed);
 	}
 
+	/**
+	 * Creates a move forward or backward through a given distance, to be run alongside other behaviours
+	 * @param centimetres double Distance to move (in cm, negative to go backward)
+	 * @param speed int Top speed (degrees per second)
+	 * @return ProfiledMove Move, which stops the robot when it finishes
+	 */
+	public ProfiledMove distanceMove(double centimetres, int speed) {
+		double degrees = Odometry.toWheelDegrees(centimetres);
+		return new ProfiledMove(this, degrees, degrees, speed);
+	}
+
+	/**
+	 * Creates a turn on the spot through a given angle, to be run alongside other behaviours
+	 * @param degrees double Angle to turn the robot through (in degrees, positive to turn left)
+	 * @param speed int Top speed of each wheel (degrees per second)
+	 * @return ProfiledMove Move, which stops the robot when it finishes
+	 */
+	public ProfiledMove rotationMove(double degrees, int speed) {
+		double wheelDegrees = Odometry.rotationToWheelDegrees(degrees);
+		return new ProfiledMove(this, -wheelDegrees, wheelDegrees, speed);
+	}
+
+	/**
+	 * Moves forward or backward through a given distance, speeding up and slowing down smoothly, then stops.
+	 * The program execution is blocked until the move has finished.
+	 * @param centimetres double Distance to move (in cm, negative to go backward)
+	 * @param speed int Top speed (degrees per second)
+	 */
+	public void driveDistance(double centimetres, int speed) throws InterruptedException {
+		long start = clock.nanoTime();
+		runMove(distanceMove(centimetres, speed));
+		driveDistanceLatency.recordSince(start);
+	}
+
+	/**
+	 * Turns on the spot through a given angle, speeding up and slowing down smoothly, then stops. The program
+	 * execution is blocked until the turn has finished.
+	 * @param degrees double Angle to turn the robot through (in degrees, positive to turn left)
+	 * @param speed int Top speed of each wheel (degrees per second)
+	 */
+	public void rotate(double degrees, int speed) throws InterruptedException {
+		long start = clock.nanoTime();
+		runMove(rotationMove(degrees, speed));
+		rotateLatency.recordSince(start);
+	}
+
+	/**
+	 * Makes a move on its own, blocking until it has finished
+	 * @param move ProfiledMove Move to make
+	 */
+	private void runMove(ProfiledMove move) throws InterruptedException {
+		BehaviourScheduler scheduler = new BehaviourScheduler(MOVE_PERIOD, clock);
+		scheduler.add(move, 0);
+		scheduler.run();
+	}
+
 	public static void main(String[] args) throws InterruptedException {
 		// Test harness 
-		RobotControl.initialise();
+		RobotControl robot = new RobotControl();
+		robot.initialise();
 		int delayBetweenTests = 2000;
 
 		System.out.println("Robot is turning right on spot");
-		RobotControl.goRightTurnOnSpot().waitFor(delayBetweenTests);
+		robot.goRightTurnOnSpot().waitFor(delayBetweenTests);
 
 		System.out.println("Robot is turning left on spot");
-		RobotControl.goLeftTurnOnSpot().waitFor(delayBetweenTests);
+		robot.goLeftTurnOnSpot().waitFor(delayBetweenTests);
 
 		System.out.println("Robot is turning right");
-		RobotControl.goRight().waitFor(delayBetweenTests);
+		robot.goRight().waitFor(delayBetweenTests);
 
 		System.out.println("Robot is turning left");
-		RobotControl.goLeft().waitFor(delayBetweenTests);
+		robot.goLeft().waitFor(delayBetweenTests);
 
 		System.out.println("Robot is turning right slowly");
-		RobotControl.goRight(4).waitFor(delayBetweenTests);
+		robot.goRight(4).waitFor(delayBetweenTests);
 
 		System.out.println("Robot is turning left slowly");
-		RobotControl.goLeft(4).waitFor(delayBetweenTests);
+		robot.goLeft(4).waitFor(delayBetweenTests);
 
 		System.out.println("Robot is going forwards");
-		RobotControl.goForward().waitFor(delayBetweenTests);
+		robot.goForward().waitFor(delayBetweenTests);
 
 		System.out.println("Robot is going backwards");
-		RobotControl.goBackward().waitFor(delayBetweenTests);
+		robot.goBackward().waitFor(delayBetweenTests);
 
 		System.out.println("Base speed changed to 300");
-		RobotControl.setBaseSpeed(300);
+		robot.setBaseSpeed(300);
 
 		System.out.println("Robot is going forwards");
-		RobotControl.goForward().waitFor(delayBetweenTests);
+		robot.goForward().waitFor(delayBetweenTests);
 
 		System.out.println("Robot has stopped");
-		RobotControl.stop();
+		robot.stop();
+
+		System.out.println("Robot is moving forwards 20cm");
+		robot.driveDistance(20, 300);
+
+		System.out.println("Robot is turning left 90 degrees");
+		robot.rotate(90, 300);
+		System.out.println("Odometry: " + robot.updateOdometry());
 
 		System.out.println("Robot is beeping");
-		RobotControl.beep(delayBetweenTests).waitFor(delayBetweenTests);
+		robot.beep(delayBetweenTests).waitFor(delayBetweenTests);
 
 		System.out.println("Testing obstacle detection in 2 seconds");
 		Thread.sleep(delayBetweenTests);
-		System.out.println(RobotControl.obstacleDetected(10) ? "Detected obstacle" : "No obstacle detected");
+		System.out.println(robot.obstacleDetected(10) ? "Detected obstacle" : "No obstacle detected");
 
 		System.out.println("Testing obstacle detection again in 2 seconds");
 		Thread.sleep(delayBetweenTests);
-		System.out.println(RobotControl.obstacleDetected(10) ? "Detected obstacle" : "No obstacle detected");
+		System.out.println(robot.obstacleDetected(10) ? "Detected obstacle" : "No obstacle detected");
 
 		System.out.println("Testing left sensor black detection in 2 seconds");
 		Thread.sleep(delayBetweenTests);
-		System.out.println(RobotControl.blackDetectedLeft() ? "Detected black" : "No black detected");
+		System.out.println(robot.blackDetectedLeft() ? "Detected black" : "No black detected");
 
 		System.out.println("Testing left sensor black detection in 2 seconds");
 		Thread.sleep(delayBetweenTests);
-		System.out.println(RobotControl.blackDetectedLeft() ? "Detected black" : "No black detected");
+		System.out.println(robot.blackDetectedLeft() ? "Detected black" : "No black detected");
 
 		System.out.println("Testing right sensor black detection in 2 seconds");
 		Thread.sleep(delayBetweenTests);
-		System.out.println(RobotControl.blackDetectedRight() ? "Detected black" : "No black detected");
+		System.out.println(robot.blackDetectedRight() ? "Detected black" : "No black detected");
 
 		System.out.println("Testing right sensor black detection in 2 seconds");
 		Thread.sleep(delayBetweenTests);
-		System.out.println(RobotControl.blackDetectedRight() ? "Detected black" : "No black detected");
+		System.out.println(robot.blackDetectedRight() ? "Detected black" : "No black detected");
 
 		System.out.println("Testing both sensors black detection in 2 seconds");
 		Thread.sleep(delayBetweenTests);
-		System.out.println(RobotControl.blackDetectedBoth() ? "Detected black" : "No black detected");
+		System.out.println(robot.blackDetectedBoth() ? "Detected black" : "No black detected");
 
 		System.out.println("Testing both sensors black detection in 2 seconds");
 		Thread.sleep(delayBetweenTests);
-		System.out.println(RobotControl.blackDetectedBoth() ? "Detected black" : "No black detected");
+		System.out.println(robot.blackDetectedBoth() ? "Detected black" : "No black detected");
 
 		System.out.println("Testing either sensors black detection in 2 seconds");
 		Thread.sleep(delayBetweenTests);
-		System.out.println(RobotControl.blackDetectedEither() ? "Detected black" : "No black detected");
+		System.out.println(robot.blackDetectedEither() ? "Detected black" : "No black detected");
 
 		System.out.println("Testing either sensors black detection in 2 seconds");
 		Thread.sleep(delayBetweenTests);
-		System.out.println(RobotControl.blackDetectedEither() ? "Detected black" : "No black detected");
+		System.out.println(robot.blackDetectedEither() ? "Detected black" : "No black detected");
+
+		System.out.println("Testing sensor snapshot in 2 seconds");
+		Thread.sleep(delayBetweenTests);
+		System.out.println(robot.readSensors());
+
+		System.out.println("Testing background sampler for 2 seconds");
+		robot.startSampler();
+		Thread.sleep(delayBetweenTests);
+		System.out.println(robot.getLatestSnapshot());
+		System.out.println("Sampling rate: " + robot.getSamplingRate() + " samples/s, sample age: "
+				+ robot.getSampleAge() / 1000 + " us");
+
+		System.out.println("Motor commands sent: " + robot.getMotorCommandsIssued() + ", suppressed: "
+				+ robot.getMotorCommandsSuppressed() + ", dropped: " + robot.getMotorCommandsDropped());
 
-		RobotControl.closeConnection();
+		robot.closeConnection();
 	}
 }
@@ -0,0 +1,78 @@
+/**
+ * Immutable description of how often each sensor is read: the light sensors as often as the connection
+ * allows for line tracking, the slower ultrasonic sensor only as often as obstacle checks need, with its
+ * readings passed through a median filter to remove spurious echoes
+ *
+ * @author Jack Deadman
+ * @author Joshua O'Leary
+ */
+
+public class SamplingPolicy {
+	// Light sensors read continuously, ultrasonic sensor refreshed every 3 or so control cycles
+	// (the robot moves less than a centimetre in that time) and filtered over 3 readings
+	public static final SamplingPolicy DEFAULT = new SamplingPolicy(0, 70, 3);
+
+	// Every sensor read on every cycle, unfiltered (the behaviour before sampling rates were configurable)
+	public static final SamplingPolicy EVERY_CYCLE = new SamplingPolicy(0, 0, 1);
+
+	private final int lightInterval;
+	private final int distanceInterval;
+	private final int distanceFilterSize;
+
+	/**
+	 * Constructs a new SamplingPolicy
+	 * @param lightInterval int Minimum time between light readings taken by the background sampler
+	 * (in milliseconds), 0 to sample continuously
+	 * @param distanceInterval int Age at which an ultrasonic reading is replaced (in milliseconds),
+	 * 0 to read on every cycle
+	 * @param distanceFilterSize int Number of ultrasonic readings the median is taken over (1 for no filtering)
+	 */
+	public SamplingPolicy(int lightInterval, int distanceInterval, int distanceFilterSize) {
+		if (lightInterval < 0 || distanceInterval < 0 || distanceFilterSize < 1) {
+			throw new IllegalArgumentException("Invalid sampling policy: " + lightInterval + ", "
+					+ distanceInterval + ", " + distanceFilterSize);
+		}
+		this.lightInterval = lightInterval;
+		this.distanceInterval = distanceInterval;
+		this.distanceFilterSize = distanceFilterSize;
+	}
+
+	/**
+	 * Returns the minimum time between light readings taken by the background sampler
+	 * @return int Interval in milliseconds (0 if sampled continuously)
+	 */
+	public int getLightInterval() {
+		return lightInterval;
+	}
+
+	/**
+	 * Returns the age at which an ultrasonic reading is replaced
+	 * @return int Interval in milliseconds (0 if read on every cycle)
+	 */
+	public int getDistanceInterval() {
+		return distanceInterval;
+	}
+
+	/**
+	 * Returns the number of ultrasonic readings the median is taken over
+	 * @return int Filter size
+	 */
+	public int getDistanceFilterSize() {
+		return distanceFilterSize;
+	}
+
+	/**
+	 * Determines whether a new ultrasonic reading should be taken
+	 * @param age long Age of the current reading (in nanoseconds), or -1 if none has been taken
+	 * @return boolean True if the sensor should be read
+	 */
+	public boolean isDistanceDue(long age) {
+		return age < 0 || age >= distanceInterval * 1000000L;
+	}
+
+	@Override
+	public String toString() {
+		return "light every " + lightInterval + "ms, distance every " + distanceInterval + "ms (median of "
+				+ distanceFilterSize + ")";
+	}
+}
@@ -0,0 +1,23 @@
+/**
+ * Changes in what the robot's sensors detect, dispatched by SensorEventDispatcher as they happen
+ *
+ * @author Jack Deadman
+ * @author Joshua O'Leary
+ */
+
+public enum SensorEvent {
+	// New readings have been taken (dispatched for every set of readings, before any other event)
+	READING,
+
+	// Left or right light sensor has moved onto or off the line
+	LEFT_ON_LINE, LEFT_OFF_LINE, RIGHT_ON_LINE, RIGHT_OFF_LINE,
+
+	// Either sensor has moved onto the line after neither detected it, or neither detects it any more
+	ON_LINE, OFF_LINE,
+
+	// Both sensors detect black, after at least one did not
+	BOTH_ON_LINE,
+
+	// An obstacle has come within range, or has moved out beyond the range plus the hysteresis
+	OBSTACLE_IN_RANGE, OBSTACLE_OUT_OF_RANGE;
+}
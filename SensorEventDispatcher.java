@@ -0,0 +1,214 @@
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Detects edges in the sensor readings (such as a sensor moving onto the line, or an obstacle coming into
+ * range) and notifies listeners or completes futures when they occur, so that code waiting for a change
+ * does not need to poll the sensors itself
+ *
+ * @author Jack Deadman
+ * @author Joshua O'Leary
+ */
+
+public class SensorEventDispatcher {
+	// All events, in the order they are dispatched
+	private static final SensorEvent[] EVENTS = SensorEvent.values();
+
+	private final List<SensorEventListener> listeners = new CopyOnWriteArrayList<SensorEventListener>();
+
+	// Futures waiting for the next occurrence of each event (guarded by this)
+	private final Map<SensorEvent, List<CompletableFuture<SensorSnapshot>>> pending =
+			new EnumMap<SensorEvent, List<CompletableFuture<SensorSnapshot>>>(SensorEvent.class);
+
+	// An obstacle is in range once it is within obstacleRange, and out of range once further than
+	// obstacleRange + obstacleHysteresis, so a reading hovering around the range does not flip back and forth
+	private volatile int obstacleRange;
+	private volatile int obstacleHysteresis;
+
+	// State after the previous readings (guarded by this)
+	private boolean leftOnLine;
+	private boolean rightOnLine;
+	private boolean obstacleInRange;
+
+	// Sequence number of the readings which last brought an obstacle into or out of range (guarded by this)
+	private long obstacleChangeSequence = -1;
+
+	/**
+	 * Constructs a new SensorEventDispatcher
+	 * @param obstacleRange int Furthest distance at which an obstacle is in range (in cm)
+	 * @param obstacleHysteresis int Extra distance an obstacle must move beyond the range to be out of range (in cm)
+	 */
+	public SensorEventDispatcher(int obstacleRange, int obstacleHysteresis) {
+		setObstacleRange(obstacleRange, obstacleHysteresis);
+	}
+
+	/**
+	 * Sets the range within which obstacles are detected
+	 * @param range int Furthest distance at which an obstacle is in range (in cm)
+	 * @param hysteresis int Extra distance an obstacle must move beyond the range to be out of range (in cm)
+	 */
+	public void setObstacleRange(int range, int hysteresis) {
+		obstacleRange = range;
+		obstacleHysteresis = hysteresis;
+	}
+
+	/**
+	 * Registers a listener to be notified of every event
+	 * @param listener SensorEventListener Listener to add
+	 */
+	public void addListener(SensorEventListener listener) {
+		listeners.add(listener);
+	}
+
+	/**
+	 * Stops notifying a listener
+	 * @param listener SensorEventListener Listener to remove
+	 */
+	public void removeListener(SensorEventListener listener) {
+		listeners.remove(listener);
+	}
+
+	/**
+	 * Returns a future completed by the next occurrence of an event
+	 * @param event SensorEvent Event to wait for
+	 * @return CompletableFuture&lt;SensorSnapshot&gt; Completed with the readings in which the event was detected
+	 */
+	public synchronized CompletableFuture<SensorSnapshot> next(SensorEvent event) {
+		CompletableFuture<SensorSnapshot> future = new CompletableFuture<SensorSnapshot>();
+		List<CompletableFuture<SensorSnapshot>> futures = pending.get(event);
+		if (futures == null) {
+			futures = new ArrayList<CompletableFuture<SensorSnapshot>>();
+			pending.put(event, futures);
+		}
+		futures.add(future);
+		return future;
+	}
+
+	/**
+	 * Determines whether an obstacle was in range at a set of readings (taking the hysteresis into account).
+	 * The readings may have been followed by newer ones (taken by the sampler while a cycle is decided from
+	 * them), so the answer holds for the readings themselves rather than for whichever came last, as the state
+	 * cannot change twice within the few readings the sampler takes ahead of a cycle.
+	 * @param snapshot SensorSnapshot Readings already dispatched
+	 * @return boolean True if an obstacle is in range
+	 */
+	public synchronized boolean isObstacleInRange(SensorSnapshot snapshot) {
+		return snapshot.getSequence() >= obstacleChangeSequence ? obstacleInRange : !obstacleInRange;
+	}
+
+	/**
+	 * Determines whether either sensor was on the line at the last readings
+	 * @return boolean True if either sensor is on the line
+	 */
+	public synchronized boolean isOnLine() {
+		return leftOnLine || rightOnLine;
+	}
+
+	/**
+	 * Compares a new set of readings with the previous ones, dispatching an event for each change
+	 * @param snapshot SensorSnapshot New readings
+	 */
+	public void update(SensorSnapshot snapshot) {
+		// Events are collected as a bit per event, so readings with no changes allocate nothing
+		int events = bit(SensorEvent.READING);
+		List<CompletableFuture<SensorSnapshot>> completed = null;
+
+		synchronized (this) {
+			boolean left = snapshot.blackDetectedLeft();
+			boolean right = snapshot.blackDetectedRight();
+			if (left != leftOnLine) {
+				events |= bit(left ? SensorEvent.LEFT_ON_LINE : SensorEvent.LEFT_OFF_LINE);
+			}
+			if (right != rightOnLine) {
+				events |= bit(right ? SensorEvent.RIGHT_ON_LINE : SensorEvent.RIGHT_OFF_LINE);
+			}
+			if ((left || right) != (leftOnLine || rightOnLine)) {
+				events |= bit(left || right ? SensorEvent.ON_LINE : SensorEvent.OFF_LINE);
+			}
+			if (left && right && !(leftOnLine && rightOnLine)) {
+				events |= bit(SensorEvent.BOTH_ON_LINE);
+			}
+			leftOnLine = left;
+			rightOnLine = right;
+
+			int distance = snapshot.getDistance();
+			if (!obstacleInRange && distance <= obstacleRange) {
+				obstacleInRange = true;
+				obstacleChangeSequence = snapshot.getSequence();
+				events |= bit(SensorEvent.OBSTACLE_IN_RANGE);
+			}
+			else if (obstacleInRange && distance > obstacleRange + obstacleHysteresis) {
+				obstacleInRange = false;
+				obstacleChangeSequence = snapshot.getSequence();
+				events |= bit(SensorEvent.OBSTACLE_OUT_OF_RANGE);
+			}
+
+			if (!pending.isEmpty()) {
+				for (SensorEvent event : EVENTS) {
+					if ((events & bit(event)) != 0 && pending.containsKey(event)) {
+						if (completed == null) {
+							completed = new ArrayList<CompletableFuture<SensorSnapshot>>();
+						}
+						completed.addAll(pending.remove(event));
+					}
+				}
+			}
+		}
+
+		// Listeners and futures are notified outside the lock, so they may register for further events
+		if (!listeners.isEmpty()) {
+			for (SensorEvent event : EVENTS) {
+				if ((events & bit(event)) != 0) {
+					for (SensorEventListener listener : listeners) {
+						listener.onSensorEvent(event, snapshot);
+					}
+				}
+			}
+		}
+		if (completed != null) {
+			for (CompletableFuture<SensorSnapshot> future : completed) {
+				future.complete(snapshot);
+			}
+		}
+	}
+
+	/**
+	 * Returns the bit representing an event in a set of events
+	 * @param event SensorEvent Event
+	 * @return int Bit for the event
+	 */
+	private static int bit(SensorEvent event) {
+		return 1 << event.ordinal();
+	}
+
+	/**
+	 * Fails every future waiting for an event, for when the sensors can no longer be read
+	 * @param cause Throwable Reason the sensors cannot be read
+	 */
+	public void fail(Throwable cause) {
+		List<CompletableFuture<SensorSnapshot>> failed = new ArrayList<CompletableFuture<SensorSnapshot>>();
+		synchronized (this) {
+			for (List<CompletableFuture<SensorSnapshot>> futures : pending.values()) {
+				failed.addAll(futures);
+			}
+			pending.clear();
+		}
+		for (CompletableFuture<SensorSnapshot> future : failed) {
+			future.completeExceptionally(cause);
+		}
+	}
+
+	/**
+	 * Forgets the previous readings, so the next readings are compared with nothing detected
+	 */
+	public synchronized void reset() {
+		leftOnLine = false;
+		rightOnLine = false;
+		obstacleInRange = false;
+		obstacleChangeSequence = -1;
+	}
+}
@@ -0,0 +1,16 @@
+/**
+ * Receives events from a SensorEventDispatcher. Listeners are called on whichever thread read the sensors
+ * (the background sampler if it is running), so should return quickly.
+ *
+ * @author Jack Deadman
+ * @author Joshua O'Leary
+ */
+
+public interface SensorEventListener {
+	/**
+	 * Called when an event occurs
+	 * @param event SensorEvent Event that occurred
+	 * @param snapshot SensorSnapshot Readings in which the event was detected
+	 */
+	void onSensorEvent(SensorEvent event, SensorSnapshot snapshot);
+}
@@ -0,0 +1,160 @@
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Background thread that continuously reads the robot's sensors and publishes the newest readings,
+ * so that decision code can fetch the latest readings without waiting on the connection to the robot
+ *
+ * @author Jack Deadman
+ * @author Joshua O'Leary
+ */
+
+public class SensorSampler implements Runnable {
+	// Length of the window over which the sampling rate is measured (in nanoseconds)
+	private static final long RATE_WINDOW = 1000000000L;
+
+	// Most recent readings, replaced atomically so readers never block on the sampler
+	private final AtomicReference<SensorSnapshot> latest = new AtomicReference<SensorSnapshot>();
+
+	// Robot whose sensors are read
+	private final RobotControl control;
+
+	// Minimum time between samples (0 means sample as fast as the connection allows)
+	private final int interval;
+
+	// Publishes the sampler's readings as soon as they are taken, before any other event is dispatched from
+	// them, so code woken by an event never fetches older readings than the ones the event was detected in
+	private final SensorEventListener publisher = new SensorEventListener() {
+		public void onSensorEvent(SensorEvent event, SensorSnapshot snapshot) {
+			if (event == SensorEvent.READING && Thread.currentThread() == thread) {
+				latest.set(snapshot);
+			}
+		}
+	};
+
+	private volatile boolean running;
+	private volatile long sampleCount;
+	private volatile double samplingRate;
+	private Thread thread;
+
+	/**
+	 * Constructs a new SensorSampler
+	 * @param control RobotControl Robot whose sensors are read
+	 * @param interval int Minimum time between samples (in milliseconds), 0 to sample continuously
+	 */
+	public SensorSampler(RobotControl control, int interval) {
+		this.control = control;
+		this.interval = interval;
+	}
+
+	/**
+	 * Starts sampling on a background thread, waiting for the first set of readings to be published
+	 */
+	public synchronized void start() throws InterruptedException {
+		if (running) {
+			return;
+		}
+		running = true;
+		// Readings from before a previous stop() are stale, and would end the wait below straight away
+		latest.set(null);
+		thread = new Thread(this, "SensorSampler");
+		thread.setDaemon(true);
+		control.getEvents().addListener(publisher);
+		thread.start();
+
+		while (latest.get() == null && thread.isAlive()) {
+			Thread.sleep(1);
+		}
+	}
+
+	/**
+	 * Stops sampling, waiting for the background thread to finish
+	 */
+	public synchronized void stop() throws InterruptedException {
+		if (!running) {
+			return;
+		}
+		running = false;
+		thread.interrupt();
+		thread.join();
+		control.getEvents().removeListener(publisher);
+	}
+
+	/**
+	 * Determines whether the sampler is running
+	 * @return boolean True if sampler is running
+	 */
+	public boolean isRunning() {
+		return running;
+	}
+
+	/**
+	 * Returns the newest readings published by the sampler
+	 * @return SensorSnapshot Latest readings, or null if none have been taken yet
+	 */
+	public SensorSnapshot getLatest() {
+		return latest.get();
+	}
+
+	/**
+	 * Returns how long ago the newest readings were taken
+	 * @return long Age in nanoseconds, or -1 if no readings have been taken yet
+	 */
+	public long getSampleAge() {
+		SensorSnapshot snapshot = latest.get();
+		return snapshot == null ? -1 : snapshot.getAge(control.getClock().nanoTime());
+	}
+
+	/**
+	 * Returns the total number of samples taken since the sampler was created
+	 * @return long Number of samples
+	 */
+	public long getSampleCount() {
+		return sampleCount;
+	}
+
+	/**
+	 * Returns the sampling rate measured over the last complete window
+	 * @return double Samples per second
+	 */
+	public double getSamplingRate() {
+		return samplingRate;
+	}
+
+	@Override
+	public void run() {
+		long windowStart = System.nanoTime();
+		long windowStartCount = sampleCount;
+
+		while (running) {
+			try {
+				latest.set(control.readSensors());
+			}
+			catch (RuntimeException e) {
+				// Anything waiting for readings from the sampler would otherwise wait forever
+				control.getEvents().fail(e);
+				running = false;
+				throw e;
+			}
+			sampleCount++;
+
+			long now = System.nanoTime();
+			if (now - windowStart >= RATE_WINDOW) {
+				samplingRate = (sampleCount - windowStartCount) * 1e9 / (now - windowStart);
+				windowStart = now;
+				windowStartCount = sampleCount;
+			}
+
+			try {
+				if (interval > 0) {
+					Thread.sleep(interval);
+				}
+				else {
+					Thread.yield();
+				}
+			}
+			catch (InterruptedException e) {
+				// Interrupted by stop(), loop condition ends sampling
+			}
+		}
+	}
+}
@@ -0,0 +1,246 @@
+/**
+ * Immutable set of sensor readings taken together in a single control cycle, so that all decisions
+ * made in that cycle are based on readings from the same instant
+ *
+ * @author Jack Deadman
+ * @author Joshua O'Leary
+ */
+
+public class SensorSnapshot {
+	private final int lightValueLeft;
+	private final int lightValueRight;
+	private final int distance;
+
+	// Last unfiltered ultrasonic reading, and the time it was taken (the ultrasonic sensor is read less often
+	// than the light sensors, so may be older than the snapshot)
+	private final int rawDistance;
+	private final long distanceTimestamp;
+
+	// Tachometer counts of the wheels when last read, by readSensors() or by a move (0 if never read)
+	private final int tachoCountLeft;
+	private final int tachoCountRight;
+
+	private final boolean blackLeft;
+	private final boolean blackRight;
+	private final boolean spotLeft;
+	private final boolean spotRight;
+
+	// How far the line is from the centre of the robot, judged from the calibration when the readings were taken
+	private final double lineError;
+
+	// Time the readings were taken (by the robot's clock) and position in the sequence of all readings taken
+	private final long timestamp;
+	private final long sequence;
+
+	/**
+	 * Constructs a new SensorSnapshot from raw sensor readings
+	 * @param lightValueLeft int Raw value read from the left light sensor
+	 * @param lightValueRight int Raw value read from the right light sensor
+	 * @param distance int Filtered distance read from the ultrasonic sensor (in cm)
+	 * @param rawDistance int Last unfiltered reading of the ultrasonic sensor (in cm)
+	 * @param distanceTimestamp long Time the ultrasonic sensor was last read (from RobotControl.getClock())
+	 * @param tachoCountLeft int Tachometer count of the left wheel (in degrees)
+	 * @param tachoCountRight int Tachometer count of the right wheel (in degrees)
+	 * @param blackLeft boolean True if the left reading is within the black threshold
+	 * @param blackRight boolean True if the right reading is within the black threshold
+	 * @param spotLeft boolean True if the left reading is within the spot threshold
+	 * @param spotRight boolean True if the right reading is within the spot threshold
+	 * @param lineError double Error between -1 (line under right sensor) and 1 (line under left sensor)
+	 * @param timestamp long Time the readings were taken (from RobotControl.getClock())
+	 * @param sequence long Sequence number of the readings
+	 */
+	public SensorSnapshot(int lightValueLeft, int lightValueRight, int distance, int rawDistance, long distanceTimestamp,
+			int tachoCountLeft, int tachoCountRight, boolean blackLeft, boolean blackRight, boolean spotLeft,
+			boolean spotRight, double lineError, long timestamp, long sequence) {
+		this.lightValueLeft = lightValueLeft;
+		this.lightValueRight = lightValueRight;
+		this.distance = distance;
+		this.rawDistance = rawDistance;
+		this.distanceTimestamp = distanceTimestamp;
+		this.tachoCountLeft = tachoCountLeft;
+		this.tachoCountRight = tachoCountRight;
+		this.blackLeft = blackLeft;
+		this.blackRight = blackRight;
+		this.spotLeft = spotLeft;
+		this.spotRight = spotRight;
+		this.lineError = lineError;
+		this.timestamp = timestamp;
+		this.sequence = sequence;
+	}
+
+	/**
+	 * Constructs a new SensorSnapshot where all sensors were read at the same time, unfiltered, with the line
+	 * error of a sensor over black taken as fully black and of one over white as fully white
+	 * @param lightValueLeft int Raw value read from the left light sensor
+	 * @param lightValueRight int Raw value read from the right light sensor
+	 * @param distance int Distance read from the ultrasonic sensor (in cm)
+	 * @param blackLeft boolean True if the left reading is within the black threshold
+	 * @param blackRight boolean True if the right reading is within the black threshold
+	 * @param spotLeft boolean True if the left reading is within the spot threshold
+	 * @param spotRight boolean True if the right reading is within the spot threshold
+	 * @param timestamp long Time the readings were taken (from RobotControl.getClock())
+	 * @param sequence long Sequence number of the readings
+	 */
+	public SensorSnapshot(int lightValueLeft, int lightValueRight, int distance, boolean blackLeft, boolean blackRight,
+			boolean spotLeft, boolean spotRight, long timestamp, long sequence) {
+		this(lightValueLeft, lightValueRight, distance, distance, timestamp, 0, 0, blackLeft, blackRight, spotLeft,
+				spotRight, (blackLeft ? 1 : 0) - (blackRight ? 1 : 0), timestamp, sequence);
+	}
+
+	/**
+	 * Returns the raw reading of the left light sensor
+	 * @return int Left light value
+	 */
+	public int getLightValueLeft() {
+		return lightValueLeft;
+	}
+
+	/**
+	 * Returns the raw reading of the right light sensor
+	 * @return int Right light value
+	 */
+	public int getLightValueRight() {
+		return lightValueRight;
+	}
+
+	/**
+	 * Returns the filtered reading of the ultrasonic sensor
+	 * @return int Distance to nearest object (in cm)
+	 */
+	public int getDistance() {
+		return distance;
+	}
+
+	/**
+	 * Returns the last unfiltered reading of the ultrasonic sensor
+	 * @return int Distance to nearest object (in cm)
+	 */
+	public int getRawDistance() {
+		return rawDistance;
+	}
+
+	/**
+	 * Returns the time the ultrasonic sensor was last read
+	 * @return long Timestamp in nanoseconds (from RobotControl.getClock())
+	 */
+	public long getDistanceTimestamp() {
+		return distanceTimestamp;
+	}
+
+	/**
+	 * Returns how long ago the ultrasonic sensor was last read
+	 * @param now long Current time in nanoseconds (from the same clock as the timestamp)
+	 * @return long Age in nanoseconds
+	 */
+	public long getDistanceAge(long now) {
+		return now - distanceTimestamp;
+	}
+
+	/**
+	 * Returns the tachometer count of the left wheel
+	 * @return int Angle the left wheel had turned when its tachometer was last read (in degrees), 0 if
+	 * it has not been read
+	 */
+	public int getTachoCountLeft() {
+		return tachoCountLeft;
+	}
+
+	/**
+	 * Returns the tachometer count of the right wheel
+	 * @return int Angle the right wheel had turned when its tachometer was last read (in degrees), 0 if
+	 * it has not been read
+	 */
+	public int getTachoCountRight() {
+		return tachoCountRight;
+	}
+
+	/**
+	 * Returns how far the line is from the centre of the robot, from the raw light values rather than whether
+	 * each sensor is over black (scaled by the calibration when the readings were taken, so a decision made from
+	 * them does not depend on readings taken since)
+	 * @return double Error between -1 (line under right sensor) and 1 (line under left sensor), 0 if centred
+	 */
+	public double getLineError() {
+		return lineError;
+	}
+
+	/**
+	 * Returns the time the readings were taken
+	 * @return long Timestamp in nanoseconds (from RobotControl.getClock())
+	 */
+	public long getTimestamp() {
+		return timestamp;
+	}
+
+	/**
+	 * Returns the sequence number of the readings (increases by one for each set of readings taken)
+	 * @return long Sequence number
+	 */
+	public long getSequence() {
+		return sequence;
+	}
+
+	/**
+	 * Returns how long ago the readings were taken
+	 * @param now long Current time in nanoseconds (from the same clock as the timestamp)
+	 * @return long Age in nanoseconds
+	 */
+	public long getAge(long now) {
+		return now - timestamp;
+	}
+
+	/**
+	 * Determines whether the left light sensor detected black
+	 * @return boolean True if left sensor detected black
+	 */
+	public boolean blackDetectedLeft() {
+		return blackLeft;
+	}
+
+	/**
+	 * Determines whether the right light sensor detected black
+	 * @return boolean True if right sensor detected black
+	 */
+	public boolean blackDetectedRight() {
+		return blackRight;
+	}
+
+	/**
+	 * Determines whether either sensor detected black
+	 * @return boolean True if either sensor detected black
+	 */
+	public boolean blackDetectedEither() {
+		return blackLeft || blackRight;
+	}
+
+	/**
+	 * Determines whether both sensors detected black
+	 * @return boolean True if both sensors detected black
+	 */
+	public boolean blackDetectedBoth() {
+		return blackLeft && blackRight;
+	}
+
+	/**
+	 * Determines whether both sensors detected the spot (darker than the line once the thresholds have been
+	 * calibrated, otherwise the same as blackDetectedBoth())
+	 * @return boolean True if both sensors detected the spot
+	 */
+	public boolean spotDetectedBoth() {
+		return spotLeft && spotRight;
+	}
+
+	/**
+	 * Determines whether an obstacle was detected in a given range
+	 * @param range int Furthest distance until object is still detected (in cm)
+	 * @return boolean True if obstacle was detected
+	 */
+	public boolean obstacleDetected(int range) {
+		return distance <= range;
+	}
+
+	@Override
+	public String toString() {
+		return "#" + sequence + " L=" + lightValueLeft + " R=" + lightValueRight + " D=" + distance;
+	}
+}
@@ -0,0 +1,456 @@
+import java.util.Random;
+
+/**
+ * In-process simulation of our robot on a SimulatedCourse, with differential-drive movement and simple
+ * light and ultrasonic sensor models. Time only advances when the robot waits (or when a simulated link
+ * latency is applied), so a run completes much faster than real time and is repeatable for a given seed.
+ * The simulation can also follow real time instead, so the robot's background threads (which are only
+ * used with real-time backends) can be run without the robot.
+ *
+ * @author Jack Deadman
+ * @author Joshua O'Leary
+ */
+
+public class SimulatedBackend implements RobotBackend {
+	// Robot dimensions (in cm), taken from the robot's own code so the simulated robot matches the one it
+	// navigates as
+	private static final double WHEEL_DIAMETER = Odometry.WHEEL_DIAMETER;
+	private static final double WHEEL_BASE = Odometry.WHEEL_BASE;
+	private static final double BODY_RADIUS = 8.0;
+
+	// Position of sensors relative to the centre of the axle (in cm)
+	private static final double LIGHT_SENSOR_OFFSET = DetourPlanner.SENSOR_OFFSET;
+	private static final double LIGHT_SENSOR_SPACING = DetourPlanner.SENSOR_SPACING;
+	private static final double ULTRASONIC_OFFSET = 6.0;
+
+	// Raw light values over white, the line and the spot, for the left and right sensors
+	private static final int[] WHITE_VALUE = {600, 650};
+	private static final int[] LINE_VALUE = {460, 500};
+	private static final int[] SPOT_VALUE = {390, 420};
+
+	// Distance over which a light sensor's reading fades between white and black (in cm)
+	private static final double LIGHT_BLUR = 1.0;
+	private static final double LIGHT_NOISE = 4.0;
+
+	// Ultrasonic sensor's maximum reading, returned when nothing is in range, and half-width of its beam
+	private static final int ULTRASONIC_MAX = 255;
+	private static final double ULTRASONIC_BEAM = Math.toRadians(15);
+
+	// Time taken for a wheel to get most of the way (63%) to a new speed, as the motors cannot change speed instantly
+	private static final double MOTOR_RESPONSE = 0.05;
+
+	// Time step used to move the robot (in nanoseconds)
+	private static final long STEP = 2000000L;
+
+	private final SimulatedCourse course;
+	private final Random random;
+
+	// Time added for each sensor read or motor command, to imitate the Bluetooth connection (in milliseconds)
+	private static final int DEFAULT_LINK_LATENCY = 5;
+	private int linkLatency = DEFAULT_LINK_LATENCY;
+
+	// Simulated time after which the simulation is abandoned (in milliseconds)
+	private long timeLimit = Long.MAX_VALUE;
+
+	// Whether time follows the system clock (from realTimeOrigin) rather than only advancing when the robot waits
+	private boolean realTime = false;
+	private long realTimeOrigin;
+
+	// Sensor read held up to imitate a stalled connection: the first sensor read once stallTime has passed
+	// (in milliseconds, -1 for none) takes stallDuration longer, without holding up any other call. The
+	// distance the faster wheel turned meanwhile is kept in stallMovement (in cm, -1 until the stall is over).
+	private long stallTime = -1;
+	private int stallDuration;
+	private double stallMovement = -1;
+
+	private long time;
+	private double x;
+	private double y;
+	private double heading;
+	private boolean collided;
+	private int tonesPlayed;
+
+	private final int[] motorSpeed = new int[2];
+	private final MotorDirection[] motorDirection = {MotorDirection.STOPPED, MotorDirection.STOPPED};
+
+	// Actual speed of each wheel along the ground (in cm per second)
+	private final double[] wheelVelocity = new double[2];
+
+	// Angle each wheel has turned, as counted by the motors' tachometers (in degrees)
+	private final double[] wheelAngle = new double[2];
+
+	/**
+	 * Constructs a new SimulatedBackend
+	 * @param course SimulatedCourse Course to drive on
+	 * @param seed long Seed for sensor noise
+	 */
+	public SimulatedBackend(SimulatedCourse course, long seed) {
+		this.course = course;
+		this.random = new Random(seed);
+		reset();
+	}
+
+	/**
+	 * Sets the time added for each sensor read or motor command
+	 * @param latency int Latency (in milliseconds)
+	 */
+	public void setLinkLatency(int latency) {
+		linkLatency = latency;
+	}
+
+	/**
+	 * Sets the simulated time after which the simulation is abandoned (with an IllegalStateException)
+	 * @param millis long Time limit (in milliseconds)
+	 */
+	public void setTimeLimit(long millis) {
+		timeLimit = millis;
+	}
+
+	/**
+	 * Sets whether time follows the system clock, with link latency and sleeps taking real time (so background
+	 * threads are used), or only advances when the robot waits
+	 * @param enabled boolean True to run in real time
+	 */
+	public synchronized void setRealTime(boolean enabled) {
+		realTime = enabled;
+		realTimeOrigin = System.nanoTime() - time;
+	}
+
+	/**
+	 * Holds up a sensor read, as if the connection stalled: the first light or ultrasonic read once a given
+	 * time has passed takes longer by a given duration, while other calls carry on
+	 * @param at long Time from the start of the run after which the read is held up (in milliseconds)
+	 * @param duration int Time the read is held up for (in milliseconds)
+	 */
+	public synchronized void setSensorStall(long at, int duration) {
+		stallTime = at;
+		stallDuration = duration;
+		stallMovement = -1;
+	}
+
+	/**
+	 * Returns how far the robot drove while the sensor read set with setSensorStall() was held up
+	 * @return double Distance turned by the faster wheel (in cm), or -1 if the stall has not finished
+	 */
+	public synchronized double getStallMovement() {
+		return stallMovement;
+	}
+
+	/**
+	 * Moves the robot back to the start of the course and resets the simulated time
+	 */
+	public synchronized void reset() {
+		double[] start = course.getStart();
+		x = start[0];
+		y = start[1];
+		heading = Math.toRadians(start[2]);
+		time = 0;
+		realTimeOrigin = System.nanoTime();
+		collided = false;
+		tonesPlayed = 0;
+		for (int i = 0; i < motorSpeed.length; i++) {
+			motorSpeed[i] = 0;
+			motorDirection[i] = MotorDirection.STOPPED;
+			wheelVelocity[i] = 0;
+			wheelAngle[i] = 0;
+		}
+	}
+
+	public void open() {
+	}
+
+	public void close() {
+	}
+
+	public void prepareSensors() {
+	}
+
+	public synchronized boolean isRealTime() {
+		return realTime;
+	}
+
+	public int getLightValueLeft() {
+		stallIfDue();
+		synchronized (this) {
+			advanceLink();
+			return lightValue(0, LIGHT_SENSOR_SPACING / 2);
+		}
+	}
+
+	public int getLightValueRight() {
+		stallIfDue();
+		synchronized (this) {
+			advanceLink();
+			return lightValue(1, -LIGHT_SENSOR_SPACING / 2);
+		}
+	}
+
+	public int getDistance() {
+		stallIfDue();
+		synchronized (this) {
+			return distance();
+		}
+	}
+
+	/**
+	 * Simulates an ultrasonic reading
+	 * @return int Distance to the nearest object in the sensor's beam (in cm)
+	 */
+	private int distance() {
+		advanceLink();
+		double sensorX = x + ULTRASONIC_OFFSET * Math.cos(heading);
+		double sensorY = y + ULTRASONIC_OFFSET * Math.sin(heading);
+
+		double nearest = Double.MAX_VALUE;
+		for (double angle = -ULTRASONIC_BEAM; angle <= ULTRASONIC_BEAM + 1e-9; angle += ULTRASONIC_BEAM) {
+			nearest = Math.min(nearest, course.rayDistance(sensorX, sensorY, heading + angle));
+		}
+		return nearest >= ULTRASONIC_MAX ? ULTRASONIC_MAX : (int)Math.round(nearest);
+	}
+
+	public synchronized int getTachoCount(int motor) {
+		advanceLink();
+		return (int)Math.round(wheelAngle[motor]);
+	}
+
+	public synchronized void setMotorSpeed(int motor, int speed) {
+		advanceLink();
+		motorSpeed[motor] = speed;
+	}
+
+	public synchronized void setMotorDirection(int motor, MotorDirection direction, boolean verify) {
+		advanceLink();
+		motorDirection[motor] = direction;
+	}
+
+	public synchronized void playTone(int hz, int duration) {
+		advanceLink();
+		tonesPlayed++;
+	}
+
+	public synchronized long nanoTime() {
+		catchUp();
+		return time;
+	}
+
+	public void sleep(long millis) throws InterruptedException {
+		// Only the calling thread waits in real time, so the other threads can use the robot meanwhile
+		if (isRealTime()) {
+			Thread.sleep(millis);
+			return;
+		}
+		synchronized (this) {
+			advance(millis * 1000000L);
+		}
+	}
+
+	/**
+	 * Returns the simulated time since the start of the run
+	 * @return long Time (in milliseconds)
+	 */
+	public synchronized long getElapsedMillis() {
+		return time / 1000000L;
+	}
+
+	/**
+	 * Returns the robot's position and heading
+	 * @return double[] Pose as {x, y, heading in degrees}
+	 */
+	public synchronized double[] getPose() {
+		return new double[] {x, y, Math.toDegrees(heading)};
+	}
+
+	/**
+	 * Determines whether the centre of the robot is on the spot
+	 * @return boolean True if robot is on the spot
+	 */
+	public synchronized boolean isOnSpot() {
+		return course.distanceToSpot(x, y) <= course.getSpot()[2];
+	}
+
+	/**
+	 * Determines whether the robot has driven into an obstacle
+	 * @return boolean True if robot has collided
+	 */
+	public synchronized boolean hasCollided() {
+		return collided;
+	}
+
+	/**
+	 * Returns the number of tones played
+	 * @return int Number of tones
+	 */
+	public synchronized int getTonesPlayed() {
+		return tonesPlayed;
+	}
+
+	/**
+	 * Applies the link latency to a call (holding the lock in real time, as the link carries one call at a time)
+	 */
+	private void advanceLink() {
+		catchUp();
+		if (linkLatency > 0) {
+			pass(linkLatency * 1000000L);
+		}
+	}
+
+	/**
+	 * Holds up the calling thread's sensor read if the stall set with setSensorStall() is due, without holding
+	 * the lock, so other threads can carry on using the robot
+	 */
+	private void stallIfDue() {
+		double[] startAngle;
+		long duration;
+		synchronized (this) {
+			catchUp();
+			if (stallTime < 0 || time < stallTime * 1000000L) {
+				return;
+			}
+			stallTime = -1;
+			startAngle = wheelAngle.clone();
+			duration = stallDuration * 1000000L;
+		}
+
+		if (isRealTime()) {
+			pass(duration);
+		}
+		else {
+			synchronized (this) {
+				advance(duration);
+			}
+		}
+
+		synchronized (this) {
+			catchUp();
+			double turned = 0;
+			for (int i = 0; i < wheelAngle.length; i++) {
+				turned = Math.max(turned, Math.abs(wheelAngle[i] - startAngle[i]));
+			}
+			stallMovement = Odometry.toCentimetres(turned);
+		}
+	}
+
+	/**
+	 * Lets a given time pass: in real time the calling thread waits (even if interrupted, as the robot's
+	 * calls cannot be interrupted, keeping the interrupt for the caller's next wait), otherwise the simulated
+	 * time is advanced
+	 * @param nanos long Time to pass (in nanoseconds)
+	 */
+	private void pass(long nanos) {
+		if (!realTime) {
+			advance(nanos);
+			return;
+		}
+		long end = System.nanoTime() + nanos;
+		boolean interrupted = false;
+		for (long remaining = nanos; remaining > 0; remaining = end - System.nanoTime()) {
+			try {
+				Thread.sleep(remaining / 1000000L, (int)(remaining % 1000000L));
+			}
+			catch (InterruptedException e) {
+				interrupted = true;
+			}
+		}
+		if (interrupted) {
+			Thread.currentThread().interrupt();
+		}
+		catchUp();
+	}
+
+	/**
+	 * Moves the robot up to the current time, if the simulation follows real time
+	 */
+	private void catchUp() {
+		if (realTime) {
+			long now = System.nanoTime() - realTimeOrigin;
+			if (now > time) {
+				advance(now - time);
+			}
+		}
+	}
+
+	/**
+	 * Moves the robot according to its motors' speeds over a given time
+	 * @param nanos long Time to advance by (in nanoseconds)
+	 */
+	private void advance(long nanos) {
+		long end = time + nanos;
+		while (time < end) {
+			long step = Math.min(STEP, end - time);
+			double dt = step / 1e9;
+
+			double response = 1 - Math.exp(-dt / MOTOR_RESPONSE);
+			for (int i = 0; i < wheelVelocity.length; i++) {
+				wheelVelocity[i] += (targetVelocity(i) - wheelVelocity[i]) * response;
+				// Wheels turn even when the robot is stuck against an obstacle
+				wheelAngle[i] += wheelVelocity[i] * dt * 360 / (Math.PI * WHEEL_DIAMETER);
+			}
+
+			double left = wheelVelocity[RobotBackend.MOTOR_LEFT];
+			double right = wheelVelocity[RobotBackend.MOTOR_RIGHT];
+			double velocity = (left + right) / 2;
+			double newX = x + velocity * Math.cos(heading) * dt;
+			double newY = y + velocity * Math.sin(heading) * dt;
+
+			// The robot can turn against an obstacle but not drive through it
+			if (course.collides(newX, newY, BODY_RADIUS)) {
+				collided = true;
+			}
+			else {
+				x = newX;
+				y = newY;
+			}
+			heading += (right - left) / WHEEL_BASE * dt;
+			time += step;
+		}
+		if (time / 1000000L > timeLimit) {
+			throw new IllegalStateException("Simulation exceeded time limit of " + timeLimit + " ms");
+		}
+	}
+
+	/**
+	 * Returns the speed along the ground a wheel's motor is trying to reach
+	 * @param motor int Index of motor
+	 * @return double Velocity (in cm per second)
+	 */
+	private double targetVelocity(int motor) {
+		double velocity = motorSpeed[motor] * Math.PI * WHEEL_DIAMETER / 360;
+		switch (motorDirection[motor]) {
+			case FORWARD:
+				return velocity;
+			case BACKWARD:
+				return -velocity;
+			default:
+				return 0;
+		}
+	}
+
+	/**
+	 * Simulates a light sensor reading, darkening from the white value as the sensor moves over the line or spot
+	 * @param sensor int Index of sensor (0 for left, 1 for right)
+	 * @param lateral double Sideways offset of the sensor from the robot's centre line (positive to the left)
+	 * @return int Raw light value
+	 */
+	private int lightValue(int sensor, double lateral) {
+		double sensorX = x + LIGHT_SENSOR_OFFSET * Math.cos(heading) - lateral * Math.sin(heading);
+		double sensorY = y + LIGHT_SENSOR_OFFSET * Math.sin(heading) + lateral * Math.cos(heading);
+
+		double lineCoverage = coverage(course.distanceToLine(sensorX, sensorY), course.getLineWidth() / 2);
+		double spotCoverage = coverage(course.distanceToSpot(sensorX, sensorY), course.getSpot()[2]);
+
+		double value = WHITE_VALUE[sensor];
+		value = Math.min(value, WHITE_VALUE[sensor] - (WHITE_VALUE[sensor] - LINE_VALUE[sensor]) * lineCoverage);
+		value = Math.min(value, WHITE_VALUE[sensor] - (WHITE_VALUE[sensor] - SPOT_VALUE[sensor]) * spotCoverage);
+		return (int)Math.round(value + random.nextGaussian() * LIGHT_NOISE);
+	}
+
+	/**
+	 * Returns how much of a light sensor's view is covered by a black shape
+	 * @param distance double Distance from the sensor to the centre of the shape
+	 * @param halfWidth double Distance from the centre of the shape to its edge
+	 * @return double Coverage between 0 and 1
+	 */
+	private static double coverage(double distance, double halfWidth) {
+		return Math.max(0, Math.min(1, (halfWidth + LIGHT_BLUR - distance) / (2 * LIGHT_BLUR)));
+	}
+}
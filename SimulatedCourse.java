@@ -0,0 +1,154 @@
+/**
+ * 2D course used by the simulator: a black line (as a series of connected points), a black spot at
+ * the goal and circular obstacles. All distances are in cm.
+ *
+ * @author Jack Deadman
+ * @author Joshua O'Leary
+ */
+
+public class SimulatedCourse {
+	private final double[][] line;
+	private final double lineWidth;
+	private final double[] spot;
+	private final double[][] obstacles;
+	private final double[] start;
+
+	/**
+	 * Constructs a new SimulatedCourse
+	 * @param line double[][] Points along the black line, each {x, y}
+	 * @param lineWidth double Width of the black line
+	 * @param spot double[] Goal spot as {x, y, radius}
+	 * @param obstacles double[][] Obstacles, each {x, y, radius}
+	 * @param start double[] Robot's start pose as {x, y, heading in degrees}
+	 */
+	public SimulatedCourse(double[][] line, double lineWidth, double[] spot, double[][] obstacles, double[] start) {
+		this.line = line;
+		this.lineWidth = lineWidth;
+		this.spot = spot;
+		this.obstacles = obstacles;
+		this.start = start;
+	}
+
+	/**
+	 * Creates a course similar to the assignment's: the robot starts facing a line with an obstacle at
+	 * one end and the spot, after a bend, at the other
+	 * @return SimulatedCourse Default course
+	 */
+	public static SimulatedCourse createDefault() {
+		double[][] line = {{-80, 0}, {60, 0}, {85, 10}, {100, 35}, {100, 110}};
+		double[] spot = {100, 110, 12};
+		double[][] obstacles = {{-96, 0, 6}};
+		double[] start = {0, -30, 90};
+		return new SimulatedCourse(line, 2.0, spot, obstacles, start);
+	}
+
+	/**
+	 * Returns the width of the black line
+	 * @return double Line width
+	 */
+	public double getLineWidth() {
+		return lineWidth;
+	}
+
+	/**
+	 * Returns the goal spot
+	 * @return double[] Spot as {x, y, radius}
+	 */
+	public double[] getSpot() {
+		return spot;
+	}
+
+	/**
+	 * Returns the obstacles on the course
+	 * @return double[][] Obstacles, each {x, y, radius}
+	 */
+	public double[][] getObstacles() {
+		return obstacles;
+	}
+
+	/**
+	 * Returns the robot's start pose
+	 * @return double[] Pose as {x, y, heading in degrees}
+	 */
+	public double[] getStart() {
+		return start;
+	}
+
+	/**
+	 * Returns the distance from a point to the centre of the nearest part of the black line
+	 * @param x double X coordinate
+	 * @param y double Y coordinate
+	 * @return double Distance to line
+	 */
+	public double distanceToLine(double x, double y) {
+		double nearest = Double.MAX_VALUE;
+		for (int i = 1; i < line.length; i++) {
+			nearest = Math.min(nearest, distanceToSegment(x, y, line[i - 1], line[i]));
+		}
+		return nearest;
+	}
+
+	/**
+	 * Returns the distance from a point to the centre of the spot
+	 * @param x double X coordinate
+	 * @param y double Y coordinate
+	 * @return double Distance to spot centre
+	 */
+	public double distanceToSpot(double x, double y) {
+		return Math.hypot(x - spot[0], y - spot[1]);
+	}
+
+	/**
+	 * Casts a ray and returns the distance to the first obstacle it hits
+	 * @param x double X coordinate of ray origin
+	 * @param y double Y coordinate of ray origin
+	 * @param heading double Direction of ray (in radians)
+	 * @return double Distance to obstacle, or Double.MAX_VALUE if none is hit
+	 */
+	public double rayDistance(double x, double y, double heading) {
+		double dx = Math.cos(heading);
+		double dy = Math.sin(heading);
+		double nearest = Double.MAX_VALUE;
+
+		for (double[] obstacle : obstacles) {
+			// Solve |origin + t * direction - centre| = radius for the smallest positive t
+			double ox = x - obstacle[0];
+			double oy = y - obstacle[1];
+			double b = ox * dx + oy * dy;
+			double c = ox * ox + oy * oy - obstacle[2] * obstacle[2];
+			double discriminant = b * b - c;
+			if (discriminant >= 0) {
+				double t = -b - Math.sqrt(discriminant);
+				if (t >= 0) {
+					nearest = Math.min(nearest, t);
+				}
+			}
+		}
+		return nearest;
+	}
+
+	/**
+	 * Determines whether a circle (e.g. the robot's body) overlaps any obstacle
+	 * @param x double X coordinate of centre
+	 * @param y double Y coordinate of centre
+	 * @param radius double Radius of circle
+	 * @return boolean True if an obstacle is hit
+	 */
+	public boolean collides(double x, double y, double radius) {
+		for (double[] obstacle : obstacles) {
+			if (Math.hypot(x - obstacle[0], y - obstacle[1]) < radius + obstacle[2]) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private static double distanceToSegment(double x, double y, double[] a, double[] b) {
+		double dx = b[0] - a[0];
+		double dy = b[1] - a[1];
+		double lengthSquared = dx * dx + dy * dy;
+		double t = lengthSquared == 0 ? 0 : ((x - a[0]) * dx + (y - a[1]) * dy) / lengthSquared;
+		t = Math.max(0, Math.min(1, t));
+		return Math.hypot(x - (a[0] + t * dx), y - (a[1] + t * dy));
+	}
+}
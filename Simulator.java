@@ -0,0 +1,115 @@
+import java.util.Arrays;
+
+/**
+ * Runs the main program against the simulated robot instead of the real one, for measuring and
+ * improving navigation without a robot or Bluetooth connection
+ *
+ * @author Jack Deadman
+ * @author Joshua O'Leary
+ */
+
+public class Simulator {
+	// Simulated time after which a run is considered to have failed (in milliseconds)
+	private static final long TIME_LIMIT = 120000;
+
+	/**
+	 * Creates a simulated robot on the default course
+	 * @param seed long Seed for sensor noise
+	 * @param linkLatency int Time added for each sensor read or motor command (in milliseconds)
+	 * @return SimulatedBackend Simulated robot, with the time limit for a run set
+	 */
+	public static SimulatedBackend createBackend(long seed, int linkLatency) {
+		SimulatedBackend backend = new SimulatedBackend(SimulatedCourse.createDefault(), seed);
+		backend.setLinkLatency(linkLatency);
+		backend.setTimeLimit(TIME_LIMIT);
+		return backend;
+	}
+
+	/**
+	 * Runs the program once on a robot whose connection has not been initialised yet, closing the connection
+	 * afterwards
+	 * @param control RobotControl Robot to run on
+	 * @param direction Direction Direction of robot's first turn
+	 * @param parameters NavigationParameters Speeds, ranges and timings to navigate with
+	 * @param flags String[] Robot flags for the run
+	 * @param courseFile String File the course map is kept in (-l), or null for the default file
+	 * @param telemetryFile String File the run is recorded to (-t), or null for the default file
+	 */
+	public static void simulate(RobotControl control, Direction direction, NavigationParameters parameters,
+			String[] flags, String courseFile, String telemetryFile) throws InterruptedException {
+		control.initialise();
+		Robot robot = new Robot(control);
+		robot.setParameters(parameters);
+		robot.setUpFlags(flags);
+		robot.setCourseFile(courseFile);
+		if (telemetryFile != null && Arrays.asList(flags).contains("-t")) {
+			robot.setTelemetryFile(telemetryFile);
+		}
+		robot.setStartDirection(direction);
+		try {
+			robot.run();
+		}
+		catch (IllegalStateException e) {
+			robot.debugLog(">> " + e.getMessage());
+			robot.stopTelemetry();
+		}
+		control.closeConnection();
+	}
+
+	/**
+	 * Runs the program once on a robot whose connection has not been initialised yet, closing the connection
+	 * afterwards
+	 * @param control RobotControl Robot to run on
+	 * @param direction Direction Direction of robot's first turn
+	 * @param parameters NavigationParameters Speeds, ranges and timings to navigate with
+	 * @param flags String[] Robot flags for the run
+	 */
+	public static void simulate(RobotControl control, Direction direction, NavigationParameters parameters,
+			String[] flags) throws InterruptedException {
+		simulate(control, direction, parameters, flags, null, null);
+	}
+
+	/**
+	 * Runs the program once with the default parameters on a robot whose connection has not been initialised
+	 * yet, closing the connection afterwards
+	 * @param control RobotControl Robot to run on
+	 * @param direction Direction Direction of robot's first turn
+	 * @param flags String[] Robot flags for the run
+	 */
+	public static void simulate(RobotControl control, Direction direction, String[] flags) throws InterruptedException {
+		simulate(control, direction, NavigationParameters.DEFAULT, flags);
+	}
+
+	/**
+	 * Runs the program once in the simulator
+	 * @param direction Direction Direction of robot's first turn
+	 * @param seed long Seed for sensor noise
+	 * @param linkLatency int Time added for each sensor read or motor command (in milliseconds)
+	 * @param flags String[] Robot flags for the run
+	 * @return SimulatedBackend Simulated robot at the end of the run
+	 */
+	public static SimulatedBackend simulate(Direction direction, long seed, int linkLatency, String[] flags)
+			throws InterruptedException {
+		SimulatedBackend backend = createBackend(seed, linkLatency);
+		simulate(new RobotControl(backend), direction, flags);
+		return backend;
+	}
+
+	public static void main(String[] args) throws InterruptedException {
+		// Usage: Simulator [LEFT|RIGHT] [seed] [link latency] [Robot flags...]
+		Direction direction = args.length > 0 ? Direction.valueOf(args[0].toUpperCase()) : Direction.RIGHT;
+		long seed = args.length > 1 ? Long.parseLong(args[1]) : 0;
+		int linkLatency = args.length > 2 ? Integer.parseInt(args[2]) : 5;
+		String[] flags = Arrays.copyOfRange(args, Math.min(3, args.length), args.length);
+
+		long startTime = System.nanoTime();
+		SimulatedBackend backend = simulate(direction, seed, linkLatency, flags);
+		long realTime = (System.nanoTime() - startTime) / 1000000;
+
+		double[] pose = backend.getPose();
+		System.out.println("Reached spot: " + backend.isOnSpot());
+		System.out.println("Collided: " + backend.hasCollided());
+		System.out.printf("Final pose: x=%.1f y=%.1f heading=%.0f%n", pose[0], pose[1], pose[2]);
+		System.out.println("Simulated time: " + backend.getElapsedMillis() + " ms, real time: " + realTime + " ms");
+	}
+}
@@ -0,0 +1,97 @@
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Checks of the robot's behaviour in the simulator which need more than a run reaching the spot, each run
+ * in real time so the robot's background threads are used as they are with the real robot. Prints the
+ * result of each check, exiting with a non-zero status if any fails.
+ *
+ * @author Jack Deadman
+ * @author Joshua O'Leary
+ */
+
+public class SimulatorTest {
+	// Seed and link latency of the simulated robot (in milliseconds)
+	private static final long SEED = 1;
+	private static final int LINK_LATENCY = 5;
+
+	// Time into the run at which a sensor read is held up, by when the robot is following the line, and
+	// how long it is held up for (in milliseconds)
+	private static final long STALL_TIME = 8000;
+	private static final int STALL_DURATION = 1500;
+
+	// Flags of the recorded run replayed (the calibration sweep also pauses the sampler and reads the
+	// tachometers outside the readings)
+	private static final String[] REPLAY_FLAGS = {"-c"};
+
+	private static int failures = 0;
+
+	/**
+	 * Creates a simulated robot which runs in real time
+	 * @return SimulatedBackend Simulated robot
+	 */
+	private static SimulatedBackend createBackend() {
+		SimulatedBackend backend = Simulator.createBackend(SEED, LINK_LATENCY);
+		backend.setRealTime(true);
+		return backend;
+	}
+
+	/**
+	 * Records the result of a check
+	 * @param name String Description of the check
+	 * @param passed boolean True if the check passed
+	 */
+	private static void check(String name, boolean passed) {
+		System.out.println((passed ? "PASS " : "FAIL ") + name);
+		if (!passed) {
+			failures++;
+		}
+	}
+
+	/**
+	 * Holds up one of the sampler's sensor reads while the robot follows the line: the control loop keeps
+	 * being given the sampler's last readings, so the watchdog must still stop the robot until readings
+	 * arrive again
+	 */
+	private static void testSensorStall() throws InterruptedException {
+		SimulatedBackend backend = createBackend();
+		backend.setSensorStall(STALL_TIME, STALL_DURATION);
+		RobotControl control = new RobotControl(backend);
+		Simulator.simulate(control, Direction.RIGHT, new String[0]);
+
+		// Distance covered at the base speed over the stall, had the robot not been stopped
+		double unstopped = Odometry.toCentimetres(NavigationParameters.DEFAULT.getBaseSpeed())
+				* STALL_DURATION / 1000.0;
+		double moved = backend.getStallMovement();
+		System.out.printf("Moved %.1f cm during a %d ms stall (%.1f cm if not stopped)%n", moved,
+				STALL_DURATION, unstopped);
+		check("sensor stall stops the robot", control.getMetrics().histogram("watchdog.stall").getCount() > 0
+				&& moved >= 0 && moved < unstopped / 2);
+	}
+
+	/**
+	 * Records a run taken with the background sampler and replays it: the replay must give the same motor
+	 * command in every control cycle, although the sampler took readings the cycles were never decided from
+	 */
+	private static void testReplayWithSampler() throws IOException, InterruptedException {
+		File recording = File.createTempFile("recording", ".bin");
+		recording.deleteOnExit();
+		String[] flags = new String[REPLAY_FLAGS.length + 1];
+		flags[0] = "-t";
+		System.arraycopy(REPLAY_FLAGS, 0, flags, 1, REPLAY_FLAGS.length);
+		RobotControl control = new RobotControl(createBackend());
+		Simulator.simulate(control, Direction.RIGHT, NavigationParameters.DEFAULT, flags, null, recording.getPath());
+
+		check("run recorded with the sampler replays", Replay.replay(recording, REPLAY_FLAGS) == 0);
+	}
+
+	public static void main(String[] args) throws IOException, InterruptedException {
+		testSensorStall();
+		testReplayWithSampler();
+		if (failures > 0) {
+			System.out.println(failures + " checks failed");
+			System.exit(1);
+		}
+		System.out.println("All checks passed");
+	}
+}
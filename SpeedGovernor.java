@@ -0,0 +1,111 @@
+/**
+ * Adjusts the base speed while following the line from how hard the robot is steering: steering settles
+ * down on straights, so the robot speeds up gradually for as long as it stays quiet, and gets busy in
+ * corners (or when the robot is too fast to hold the line), so the robot slows down as soon as it does.
+ * Activity is averaged over a short time, so the weaving of normal line following does not count as a
+ * corner.
+ *
+ * @author Jack Deadman
+ * @author Joshua O'Leary
+ */
+
+public class SpeedGovernor {
+	// Time over which steering activity is averaged (in nanoseconds)
+	private static final long ACTIVITY_TIME = 300000000L;
+
+	// Time steering must stay quiet, and activity it must stay below, before speeding up (in nanoseconds)
+	private static final long SETTLE_TIME = 200000000L;
+	private static final double QUIET_ACTIVITY = 0.25;
+
+	// Activity at or above which the robot is slowed to the lowest speed
+	private static final double BUSY_ACTIVITY = 0.6;
+
+	private final int minSpeed;
+	private final int maxSpeed;
+	private final double acceleration;
+
+	private double speed;
+	private double activity;
+	private long lastCorrection;
+	private long lastUpdate;
+	private boolean started;
+
+	/**
+	 * Constructs a new SpeedGovernor
+	 * @param minSpeed int Lowest base speed (degrees per second)
+	 * @param maxSpeed int Highest base speed (degrees per second)
+	 * @param acceleration double Rate the base speed rises while steering is quiet (degrees per second per second)
+	 */
+	public SpeedGovernor(int minSpeed, int maxSpeed, double acceleration) {
+		if (minSpeed <= 0 || maxSpeed < minSpeed || acceleration <= 0) {
+			throw new IllegalArgumentException("Invalid speed limits: " + minSpeed + ", " + maxSpeed + ", "
+					+ acceleration);
+		}
+		this.minSpeed = minSpeed;
+		this.maxSpeed = maxSpeed;
+		this.acceleration = acceleration;
+		this.speed = minSpeed;
+	}
+
+	/**
+	 * Starts governing again from a given speed, forgetting previous steering (e.g. after turning around)
+	 * @param startSpeed int Base speed to start from (degrees per second), kept within the limits
+	 */
+	public void reset(int startSpeed) {
+		speed = Math.max(minSpeed, Math.min(maxSpeed, startSpeed));
+		activity = 0;
+		started = false;
+	}
+
+	/**
+	 * Adds the steering of a control cycle and calculates the base speed for the next one
+	 * @param correction double How hard the robot steered, between 0 (straight ahead) and 1 (hardest turn)
+	 * @param now long Time of the readings the steering was decided from (in nanoseconds)
+	 * @return int Base speed (degrees per second)
+	 */
+	public int update(double correction, long now) {
+		if (!started) {
+			lastUpdate = now;
+			lastCorrection = now;
+			started = true;
+		}
+		long elapsed = now - lastUpdate;
+		lastUpdate = now;
+
+		activity += (correction - activity) * Math.min(1, (double)elapsed / ACTIVITY_TIME);
+		if (correction >= QUIET_ACTIVITY) {
+			lastCorrection = now;
+		}
+
+		double target = maxSpeed - (maxSpeed - minSpeed) * Math.min(1, activity / BUSY_ACTIVITY);
+		if (target < speed) {
+			speed = target;
+		}
+		else if (now - lastCorrection >= SETTLE_TIME) {
+			speed = Math.min(target, speed + acceleration * elapsed / 1e9);
+		}
+		return getSpeed();
+	}
+
+	/**
+	 * Returns the base speed calculated at the last update
+	 * @return int Base speed (degrees per second)
+	 */
+	public int getSpeed() {
+		return (int)Math.round(speed);
+	}
+
+	/**
+	 * Returns the average steering activity
+	 * @return double Activity between 0 (straight ahead) and 1 (turning as hard as possible)
+	 */
+	public double getActivity() {
+		return activity;
+	}
+
+	@Override
+	public String toString() {
+		return "speed " + getSpeed() + " (" + minSpeed + "-" + maxSpeed + "), activity "
+				+ String.format("%.2f", activity);
+	}
+}
@@ -0,0 +1,18 @@
+/**
+ * Receives the counts of each read of the wheels' tachometers made by RobotControl.updateOdometry() (the
+ * counts read by readSensors() are carried by its readings instead). Listeners are called on whichever thread
+ * read the tachometers, so should return quickly.
+ *
+ * @author Jack Deadman
+ * @author Joshua O'Leary
+ */
+
+public interface TachoCountListener {
+	/**
+	 * Called when the tachometers have been read
+	 * @param tachoCountLeft int Tachometer count of the left wheel (in degrees)
+	 * @param tachoCountRight int Tachometer count of the right wheel (in degrees)
+	 * @param timestamp long Time the tachometers were read (from RobotControl.getClock())
+	 */
+	void onTachoCounts(int tachoCountLeft, int tachoCountRight, long timestamp);
+}
@@ -0,0 +1,177 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Reads a telemetry file written by TelemetryRecorder
+ *
+ * @author Jack Deadman
+ * @author Joshua O'Leary
+ */
+
+public class TelemetryReader {
+	private final MappedByteBuffer buffer;
+	private final int recordCount;
+	private final int tag;
+
+	/**
+	 * Opens a telemetry file
+	 * @param input File Telemetry file
+	 */
+	public TelemetryReader(File input) throws IOException {
+		RandomAccessFile file = new RandomAccessFile(input, "r");
+		try {
+			buffer = file.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, file.length());
+		}
+		finally {
+			file.close();
+		}
+
+		if (buffer.getInt(0) != TelemetryRecorder.MAGIC || buffer.getInt(4) != TelemetryRecorder.VERSION) {
+			throw new IOException("Not a telemetry file: " + input);
+		}
+		recordCount = buffer.getInt(TelemetryRecorder.HEADER_COUNT);
+		tag = buffer.getInt(TelemetryRecorder.HEADER_TAG);
+	}
+
+	/**
+	 * Returns the number of records in the file
+	 * @return int Number of records
+	 */
+	public int getRecordCount() {
+		return recordCount;
+	}
+
+	/**
+	 * Returns the tag describing the run, stored when recording started
+	 * @return int Tag
+	 */
+	public int getTag() {
+		return tag;
+	}
+
+	/**
+	 * Returns the time a record's sensor readings were taken
+	 * @param record int Index of record
+	 * @return long Timestamp (in nanoseconds)
+	 */
+	public long getTimestamp(int record) {
+		return buffer.getLong(offset(record) + TelemetryRecorder.TIMESTAMP);
+	}
+
+	/**
+	 * Returns the sequence number of a record's sensor readings
+	 * @param record int Index of record
+	 * @return int Sequence number
+	 */
+	public int getSequence(int record) {
+		return buffer.getInt(offset(record) + TelemetryRecorder.SEQUENCE);
+	}
+
+	/**
+	 * Returns a record's left light value
+	 * @param record int Index of record
+	 * @return int Raw light value
+	 */
+	public int getLightValueLeft(int record) {
+		return buffer.getShort(offset(record) + TelemetryRecorder.LIGHT_LEFT);
+	}
+
+	/**
+	 * Returns a record's right light value
+	 * @param record int Index of record
+	 * @return int Raw light value
+	 */
+	public int getLightValueRight(int record) {
+		return buffer.getShort(offset(record) + TelemetryRecorder.LIGHT_RIGHT);
+	}
+
+	/**
+	 * Returns a record's last unfiltered ultrasonic distance
+	 * @param record int Index of record
+	 * @return int Distance (in cm)
+	 */
+	public int getDistance(int record) {
+		return buffer.getShort(offset(record) + TelemetryRecorder.DISTANCE);
+	}
+
+	/**
+	 * Returns the command given to the left motor at the end of a record's cycle
+	 * @param record int Index of record
+	 * @return MotorCommand Command, or null if no command had been given
+	 */
+	public MotorCommand getCommandLeft(int record) {
+		return getCommand(record, TelemetryRecorder.SPEED_LEFT, TelemetryRecorder.DIRECTION_LEFT);
+	}
+
+	/**
+	 * Returns the command given to the right motor at the end of a record's cycle
+	 * @param record int Index of record
+	 * @return MotorCommand Command, or null if no command had been given
+	 */
+	public MotorCommand getCommandRight(int record) {
+		return getCommand(record, TelemetryRecorder.SPEED_RIGHT, TelemetryRecorder.DIRECTION_RIGHT);
+	}
+
+	/**
+	 * Returns the time a record's cycle took
+	 * @param record int Index of record
+	 * @return int Loop duration (in microseconds), or TelemetryRecorder.READING or TACHO_COUNTS for a record
+	 * which is not a cycle
+	 */
+	public int getLoopDuration(int record) {
+		return buffer.getInt(offset(record) + TelemetryRecorder.LOOP_DURATION);
+	}
+
+	/**
+	 * Determines whether a record holds a set of sensor readings as it was taken, rather than a control cycle
+	 * @param record int Index of record
+	 * @return boolean True if the record is a reading
+	 */
+	public boolean isReading(int record) {
+		return getLoopDuration(record) == TelemetryRecorder.READING;
+	}
+
+	/**
+	 * Determines whether a record holds the counts of a read of the tachometers made outside a set of readings
+	 * @param record int Index of record
+	 * @return boolean True if the record is tachometer counts
+	 */
+	public boolean isTachoCounts(int record) {
+		return getLoopDuration(record) == TelemetryRecorder.TACHO_COUNTS;
+	}
+
+	/**
+	 * Determines whether a record holds a control cycle
+	 * @param record int Index of record
+	 * @return boolean True if the record is a cycle
+	 */
+	public boolean isCycle(int record) {
+		return getLoopDuration(record) >= 0;
+	}
+
+	/**
+	 * Returns a tachometer count recorded in a record, modulo 2^16
+	 * @param record int Index of record
+	 * @param motor int Index of motor
+	 * @return short Lowest 16 bits of the last tachometer count read before the record's readings
+	 */
+	public short getTachoCount(int record, int motor) {
+		int offset = motor == RobotBackend.MOTOR_LEFT ? TelemetryRecorder.TACHO_LEFT : TelemetryRecorder.TACHO_RIGHT;
+		return buffer.getShort(offset(record) + offset);
+	}
+
+	private MotorCommand getCommand(int record, int speedOffset, int directionOffset) {
+		int direction = buffer.get(offset(record) + directionOffset);
+		if (direction < 0) {
+			return null;
+		}
+		return new MotorCommand(buffer.getShort(offset(record) + speedOffset), MotorDirection.values()[direction]);
+	}
+
+	private static int offset(int record) {
+		return TelemetryRecorder.HEADER_SIZE + record * TelemetryRecorder.RECORD_SIZE;
+	}
+}
@@ -0,0 +1,350 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Records a fixed-size binary record for every set of sensor readings taken, every read of the tachometers
+ * made outside a set of readings and every control cycle (the readings it was decided from, motor commands and
+ * loop duration) without slowing the control loop: records are written into a preallocated ring buffer, and a
+ * background thread copies them into a memory-mapped file. The kinds of record are told apart by the loop
+ * duration, which is READING or TACHO_COUNTS for records which are not cycles.
+ *
+ * File layout: a header of HEADER_SIZE bytes (MAGIC, VERSION, RECORD_SIZE, number of records and a tag
+ * describing the run), followed by the records, each laid out at the offsets below.
+ *
+ * @author Jack Deadman
+ * @author Joshua O'Leary
+ */
+
+public class TelemetryRecorder implements Runnable {
+	public static final int MAGIC = 0x4e585454;
+	public static final int VERSION = 2;
+	public static final int RECORD_SIZE = 32;
+	public static final int HEADER_SIZE = RECORD_SIZE;
+
+	// Offsets of fields within a record
+	public static final int TIMESTAMP = 0;
+	public static final int SEQUENCE = 8;
+	public static final int LIGHT_LEFT = 12;
+	public static final int LIGHT_RIGHT = 14;
+	public static final int DISTANCE = 16;
+	public static final int SPEED_LEFT = 18;
+	public static final int SPEED_RIGHT = 20;
+	public static final int DIRECTION_LEFT = 22;
+	public static final int DIRECTION_RIGHT = 23;
+	public static final int LOOP_DURATION = 24;
+	// Tachometer counts are stored modulo 2^16 (readers unwrap them from consecutive records)
+	public static final int TACHO_LEFT = 28;
+	public static final int TACHO_RIGHT = 30;
+
+	// Loop durations stored in the records of readings and of tachometer counts, which are not control cycles
+	public static final int READING = -1;
+	public static final int TACHO_COUNTS = -2;
+
+	// Offsets of the number of records and the tag within the header
+	public static final int HEADER_COUNT = 12;
+	public static final int HEADER_TAG = 16;
+
+	// Size of each region of the file mapped at a time
+	private static final int MAP_CHUNK = 1 << 20;
+
+	// Time between copying records from the ring buffer to the file (in milliseconds)
+	private static final int FLUSH_INTERVAL = 100;
+
+	private final ByteBuffer ring;
+	private final int capacity;
+
+	// Records written into the ring buffer (by the robot), and records copied to the file
+	private volatile long written;
+	private volatile long flushed;
+	private volatile long dropped;
+
+	private RandomAccessFile file;
+	private FileChannel channel;
+	private MappedByteBuffer mapped;
+	private long mappedStart;
+
+	// Whether the file is open (until close()), and whether copying records to it has failed
+	private volatile boolean running;
+	private volatile boolean failed;
+
+	// Whether a record waits for space in a full ring buffer rather than being dropped
+	private volatile boolean waitWhenFull;
+	private Thread thread;
+
+	/**
+	 * Constructs a new TelemetryRecorder
+	 * @param capacity int Number of records the ring buffer holds before records are dropped
+	 */
+	public TelemetryRecorder(int capacity) {
+		this.capacity = capacity;
+		this.ring = ByteBuffer.allocateDirect(capacity * RECORD_SIZE);
+	}
+
+	/**
+	 * Creates the telemetry file and starts copying records to it in the background
+	 * @param output File File to record to (overwritten if it exists)
+	 * @param tag int Value stored in the header describing the run (e.g. the robot's start direction)
+	 */
+	public synchronized void open(File output, int tag) throws IOException {
+		file = new RandomAccessFile(output, "rw");
+		file.setLength(0);
+		channel = file.getChannel();
+		mappedStart = 0;
+		mapped = channel.map(FileChannel.MapMode.READ_WRITE, 0, MAP_CHUNK);
+		mapped.putInt(MAGIC).putInt(VERSION).putInt(RECORD_SIZE).putInt(0).putInt(tag);
+		mapped.position(HEADER_SIZE);
+
+		written = 0;
+		flushed = 0;
+		dropped = 0;
+		failed = false;
+		running = true;
+		thread = new Thread(this, "TelemetryRecorder");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	/**
+	 * Determines whether the recorder is recording
+	 * @return boolean True if recording (until closed, even if copying records to the file has failed)
+	 */
+	public boolean isRecording() {
+		return running;
+	}
+
+	/**
+	 * Sets whether a record waits for space when the ring buffer is full rather than being dropped. Waiting
+	 * suits runs which are not in real time (such as a replay), where it holds nothing up and every record is
+	 * wanted, but not the real robot.
+	 * @param wait boolean True to wait for space, false to drop records
+	 */
+	public void setWaitWhenFull(boolean wait) {
+		waitWhenFull = wait;
+	}
+
+	/**
+	 * Determines whether copying records to the file has failed, after which new records are dropped
+	 * @return boolean True if failed
+	 */
+	public boolean hasFailed() {
+		return failed;
+	}
+
+	/**
+	 * Records one control cycle. Does not allocate or wait: if the ring buffer is full the record is dropped
+	 * (unless set to wait for space).
+	 * Records may be added from several threads, but not at the same time (callers must serialize them).
+	 * @param snapshot SensorSnapshot Sensor readings the cycle was decided from
+	 * @param left MotorCommand Command most recently given to the left motor (may be null)
+	 * @param right MotorCommand Command most recently given to the right motor (may be null)
+	 * @param loopDuration long Time the cycle took (in nanoseconds)
+	 */
+	public void record(SensorSnapshot snapshot, MotorCommand left, MotorCommand right, long loopDuration) {
+		put(snapshot, left, right, (int)Math.min(Integer.MAX_VALUE, Math.max(0, loopDuration) / 1000));
+	}
+
+	/**
+	 * Records one set of sensor readings as it is taken, in the same way as record()
+	 * @param snapshot SensorSnapshot Sensor readings
+	 * @param left MotorCommand Command most recently given to the left motor (may be null)
+	 * @param right MotorCommand Command most recently given to the right motor (may be null)
+	 */
+	public void recordReading(SensorSnapshot snapshot, MotorCommand left, MotorCommand right) {
+		put(snapshot, left, right, READING);
+	}
+
+	/**
+	 * Records the counts of one read of the tachometers made outside a set of readings (by a move), in the
+	 * same way as record(). The sensor fields of the record are left at 0.
+	 * @param timestamp long Time the tachometers were read (from RobotControl.getClock())
+	 * @param tachoCountLeft int Tachometer count of the left wheel (in degrees)
+	 * @param tachoCountRight int Tachometer count of the right wheel (in degrees)
+	 * @param left MotorCommand Command most recently given to the left motor (may be null)
+	 * @param right MotorCommand Command most recently given to the right motor (may be null)
+	 */
+	public void recordTachoCounts(long timestamp, int tachoCountLeft, int tachoCountRight, MotorCommand left,
+			MotorCommand right) {
+		int offset = reserve();
+		if (offset < 0) {
+			return;
+		}
+		ring.putLong(offset + TIMESTAMP, timestamp);
+		ring.putInt(offset + SEQUENCE, 0);
+		ring.putShort(offset + LIGHT_LEFT, (short)0);
+		ring.putShort(offset + LIGHT_RIGHT, (short)0);
+		ring.putShort(offset + DISTANCE, (short)0);
+		publish(offset, left, right, TACHO_COUNTS, tachoCountLeft, tachoCountRight);
+	}
+
+	/**
+	 * Writes a record of a set of readings into the ring buffer
+	 * @param snapshot SensorSnapshot Sensor readings
+	 * @param left MotorCommand Command most recently given to the left motor (may be null)
+	 * @param right MotorCommand Command most recently given to the right motor (may be null)
+	 * @param loopDuration int Time the cycle took (in microseconds), or READING
+	 */
+	private void put(SensorSnapshot snapshot, MotorCommand left, MotorCommand right, int loopDuration) {
+		int offset = reserve();
+		if (offset < 0) {
+			return;
+		}
+		ring.putLong(offset + TIMESTAMP, snapshot.getTimestamp());
+		ring.putInt(offset + SEQUENCE, (int)snapshot.getSequence());
+		ring.putShort(offset + LIGHT_LEFT, (short)snapshot.getLightValueLeft());
+		ring.putShort(offset + LIGHT_RIGHT, (short)snapshot.getLightValueRight());
+		ring.putShort(offset + DISTANCE, (short)snapshot.getRawDistance());
+		publish(offset, left, right, loopDuration, snapshot.getTachoCountLeft(), snapshot.getTachoCountRight());
+	}
+
+	/**
+	 * Finds the place in the ring buffer for the next record
+	 * @return int Offset of the record in the ring buffer, or -1 if the record is dropped (as the ring buffer is
+	 * full, or the recorder is not recording)
+	 */
+	private int reserve() {
+		if (!running || failed) {
+			return -1;
+		}
+		long index = written;
+		while (index - flushed >= capacity) {
+			if (!waitWhenFull || failed) {
+				dropped++;
+				return -1;
+			}
+			// The background thread is woken to make space straight away
+			LockSupport.unpark(thread);
+			Thread.yield();
+		}
+		return (int)(index % capacity) * RECORD_SIZE;
+	}
+
+	/**
+	 * Writes the rest of a record (after the sensor fields) and publishes it
+	 * @param offset int Offset of the record in the ring buffer
+	 * @param left MotorCommand Command most recently given to the left motor (may be null)
+	 * @param right MotorCommand Command most recently given to the right motor (may be null)
+	 * @param loopDuration int Time the cycle took (in microseconds), or READING or TACHO_COUNTS
+	 * @param tachoCountLeft int Tachometer count of the left wheel (in degrees)
+	 * @param tachoCountRight int Tachometer count of the right wheel (in degrees)
+	 */
+	private void publish(int offset, MotorCommand left, MotorCommand right, int loopDuration,
+			int tachoCountLeft, int tachoCountRight) {
+		putCommand(offset + SPEED_LEFT, offset + DIRECTION_LEFT, left);
+		putCommand(offset + SPEED_RIGHT, offset + DIRECTION_RIGHT, right);
+		ring.putInt(offset + LOOP_DURATION, loopDuration);
+		ring.putShort(offset + TACHO_LEFT, (short)tachoCountLeft);
+		ring.putShort(offset + TACHO_RIGHT, (short)tachoCountRight);
+
+		// Publishing the new count makes the record visible to the background thread
+		written++;
+	}
+
+	/**
+	 * Copies any remaining records to the file, stops the background thread and closes the file. The number
+	 * of records copied is always written to the header, and the file always closed, even if copying failed.
+	 */
+	public synchronized void close() throws IOException, InterruptedException {
+		if (!running) {
+			return;
+		}
+		running = false;
+		thread.interrupt();
+		thread.join();
+		try {
+			try {
+				if (!failed) {
+					flush();
+				}
+			}
+			finally {
+				ensureMapped(0);
+				mapped.putInt(HEADER_COUNT, (int)flushed);
+				mapped.force();
+				// The file was extended to whole mapped regions, so the space after the last record is cut off
+				channel.truncate(HEADER_SIZE + flushed * RECORD_SIZE);
+			}
+		}
+		finally {
+			mapped = null;
+			channel.close();
+			file.close();
+		}
+	}
+
+	/**
+	 * Returns the number of records copied to the file
+	 * @return long Number of records
+	 */
+	public long getRecordsWritten() {
+		return flushed;
+	}
+
+	/**
+	 * Returns the number of records dropped because the ring buffer was full
+	 * @return long Number of records dropped
+	 */
+	public long getRecordsDropped() {
+		return dropped;
+	}
+
+	@Override
+	public void run() {
+		while (running) {
+			// Woken early by a record waiting for space, or by close() (after which the loop condition ends
+			// recording)
+			LockSupport.parkNanos(this, FLUSH_INTERVAL * 1000000L);
+			try {
+				flush();
+			}
+			catch (IOException e) {
+				// Records are dropped from now on, but close() still finishes the file
+				System.err.println("Telemetry recording failed: " + e.getMessage());
+				failed = true;
+				return;
+			}
+		}
+	}
+
+	private void putCommand(int speedOffset, int directionOffset, MotorCommand command) {
+		ring.putShort(speedOffset, (short)(command == null ? 0 : command.getSpeed()));
+		ring.put(directionOffset, (byte)(command == null ? -1 : command.getDirection().ordinal()));
+	}
+
+	/**
+	 * Copies all records written to the ring buffer but not yet to the file (only called by the background
+	 * thread, or by close() once the thread has finished)
+	 */
+	private void flush() throws IOException {
+		long end = written;
+		ByteBuffer source = ring.duplicate();
+		for (long index = flushed; index < end; index++) {
+			int offset = (int)(index % capacity) * RECORD_SIZE;
+			source.limit(offset + RECORD_SIZE).position(offset);
+
+			ensureMapped(HEADER_SIZE + index * RECORD_SIZE);
+			mapped.put(source);
+			source.limit(source.capacity());
+		}
+		flushed = end;
+	}
+
+	/**
+	 * Maps the region of the file containing a given position (records never straddle regions as the
+	 * record size divides the region size)
+	 * @param position long Position in the file
+	 */
+	private void ensureMapped(long position) throws IOException {
+		long start = position / MAP_CHUNK * MAP_CHUNK;
+		if (start != mappedStart) {
+			mapped.force();
+			mapped = channel.map(FileChannel.MapMode.READ_WRITE, start, MAP_CHUNK);
+			mappedStart = start;
+		}
+		mapped.position((int)(position - start));
+	}
+}
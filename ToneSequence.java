@@ -0,0 +1,41 @@
+/**
+ * Behaviour which plays a sequence of notes of equal length with a MelodySequencer: on its own thread if
+ * the robot's backend is real-time, so sending a note never holds up the other behaviours, otherwise from
+ * the behaviour's steps
+ *
+ * @author Jack Deadman
+ * @author Joshua O'Leary
+ */
+
+public class ToneSequence implements Behaviour {
+	private final MelodySequencer melody;
+
+	// Whether the tune is being played on the sequencer's thread, once it has started
+	private boolean background;
+	private boolean started;
+
+	/**
+	 * Constructs a new ToneSequence
+	 * @param control RobotControl Robot to play the notes on
+	 * @param frequencies int[] Frequency of each note (in hertz)
+	 * @param noteLength int Duration of each note (in milliseconds)
+	 */
+	public ToneSequence(RobotControl control, int[] frequencies, int noteLength) {
+		this.melody = new MelodySequencer(control, frequencies, noteLength);
+	}
+
+	public boolean usesMotors() {
+		return false;
+	}
+
+	public boolean step(long now) {
+		if (!started) {
+			background = melody.start();
+			started = true;
+		}
+		if (background) {
+			return !melody.getFinished().isDone();
+		}
+		return melody.step(now);
+	}
+}